@@ -3,6 +3,7 @@ package ttmp.among;
 import org.jetbrains.annotations.Nullable;
 import ttmp.among.compile.AmongParser;
 import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.JsonParser;
 import ttmp.among.compile.Source;
 import ttmp.among.definition.AmongDefinition;
 import ttmp.among.definition.MacroDefinition;
@@ -21,6 +22,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * Absolutely Mental Object Notation. (G is silent (that's how acronyms work right?))<br>
@@ -101,6 +104,60 @@ public class AmongEngine{
 	 */
 	public int invalidUnicodeHandling = ErrorHandling.ERROR;
 
+	/**
+	 * Number of slots in the string pool created for each compilation. Literals read during compilation - property keys,
+	 * names of lists and operations, primitive values - are looked up in the pool before being allocated, so literals
+	 * repeated across the source share one instance. Each slot holds one string; a literal mapped to an occupied slot
+	 * replaces the string in it, so the pool stays bounded regardless of the source.<br>
+	 * The value is rounded up to a power of 2. {@code 0} or negative value disables the pool.
+	 *
+	 * @see AmongEngine#stringPoolMaxLength
+	 */
+	public int stringPoolSize = 1024;
+
+	/**
+	 * Literals longer than this value, in codepoints, are not pooled.
+	 *
+	 * @see AmongEngine#stringPoolSize
+	 */
+	public int stringPoolMaxLength = 32;
+
+	/**
+	 * If enabled, positions of brackets, quotes and comments of the source are indexed in a separate pass when the
+	 * compiler first runs into an error, with pairs of brackets matched. Error recovery then skips bracketed portion
+	 * of the source by jumping to the matching bracket instead of reading it, and errors caused by mismatched brackets
+	 * are reported with a hint pointing to the mismatch.<br>
+	 * The index does not account for tokenization modes, so the portion of the source skipped in recovery may differ
+	 * from the one skipped without the index when brackets are used as part of words or keys. Sources read with
+	 * {@link Source#stream(java.nio.channels.ReadableByteChannel, java.nio.charset.Charset) Source.stream()} are not
+	 * indexed.
+	 */
+	public boolean structuralIndex = false;
+	/**
+	 * Maximum number of errors reported before the compilation stops. Once the limit is reached, the compiler stops
+	 * reading the source without trying to recover, and the result is marked as {@link CompileResult#isTruncated()
+	 * truncated}; setting it to {@code 1} stops at the first error, which is enough to tell whether the source is
+	 * valid or not. Warnings are not counted. {@code 0} or negative value disables the limit.<br>
+	 * Results compiled with the limit cannot be compiled incrementally; {@link AmongEngine#readIncremental(CompileResult,
+	 * int, int, CharSequence) readIncremental()} compiles the whole source instead.
+	 */
+	public int maxErrors = 0;
+
+	/**
+	 * Size of the chunks, in codepoints, the source is split into when building {@link #structuralIndex the
+	 * structural index}. Sources spanning at least two chunks are indexed in parallel, with each chunk scanned on
+	 * separate thread of {@link #structuralIndexPool}. Values of zero or below disable parallel indexing.
+	 */
+	public int structuralIndexChunkSize = 1<<20;
+	/**
+	 * Pool the {@link #structuralIndex structural index} is built on when it's indexed in parallel. {@code null} uses
+	 * the {@link ForkJoinPool#commonPool() common pool}. Sources are indexed sequentially if parallelism of the pool is
+	 * below 2.
+	 *
+	 * @see AmongEngine#structuralIndexChunkSize
+	 */
+	@Nullable public ForkJoinPool structuralIndexPool;
+
 	private final List<Provider<Source>> sourceProviders = new ArrayList<>();
 	private final List<Provider<RootAndDefinition>> instanceProviders = new ArrayList<>();
 	private final Map<String, RootAndDefinition> pathByInstance = new HashMap<>();
@@ -160,6 +217,91 @@ public class AmongEngine{
 				.parse();
 	}
 
+	/**
+	 * Reads the source as JSON into newly created {@link AmongRoot}. The source is read with a parser dedicated to JSON,
+	 * which is considerably faster than reading it with {@link AmongEngine#read(Source)}; the result is the same as
+	 * reading valid JSON without any definition. The parser stops at the first syntax error instead of recovering from
+	 * it.
+	 *
+	 * @param source Source to be read from
+	 * @return Result with new root containing values parsed from {@code source}, and an empty definition
+	 * @see JsonParser
+	 */
+	public final CompileResult readJson(Source source){
+		return readJson(source, null);
+	}
+
+	/**
+	 * Reads the source as JSON into given {@link AmongRoot}, or new one if {@code null} is supplied.
+	 *
+	 * @param source Source to be read from
+	 * @param root   Root to be used; will be modified returned as compilation result. If {@code null} is supplied, new
+	 *               root will be created.
+	 * @return Result with {@code root} (or new root if it was {@code null}) containing values parsed from {@code
+	 * source}, and an empty definition
+	 * @see AmongEngine#readJson(Source)
+	 */
+	public final CompileResult readJson(Source source, @Nullable AmongRoot root){
+		return new JsonParser(source, this, root==null ? new AmongRoot() : root).parse();
+	}
+
+	/**
+	 * Reads and parses the source, handing each top level object to {@code objectConsumer} as soon as it is parsed,
+	 * instead of collecting them in a root. Macros and operators are accumulated in the definition as usual. This
+	 * keeps only one top level object in memory at a time, no matter how many objects the source contains.
+	 *
+	 * @param source         Source to be read from
+	 * @param objectConsumer Consumer receiving each top level object, in order of appearance. Exceptions thrown by it
+	 *                       will stop the parsing and propagate to the caller.
+	 * @return Result with an empty root
+	 * @see AmongEngine#readStreaming(Source, AmongDefinition, Consumer)
+	 */
+	public final CompileResult readStreaming(Source source, Consumer<Among> objectConsumer){
+		return readStreaming(source, null, objectConsumer);
+	}
+
+	/**
+	 * Reads and parses the source, handing each top level object to {@code objectConsumer} as soon as it is parsed,
+	 * instead of collecting them in a root. Macros and operators are accumulated in the definition as usual. This
+	 * keeps only one top level object in memory at a time, no matter how many objects the source contains.
+	 *
+	 * @param source           Source to be read from
+	 * @param importDefinition Imported definitions to be used; will be modified. Does not get returned as compilation
+	 *                         result.
+	 * @param objectConsumer   Consumer receiving each top level object, in order of appearance. Exceptions thrown by it
+	 *                         will stop the parsing and propagate to the caller.
+	 * @return Result with an empty root
+	 * @throws NullPointerException If {@code objectConsumer == null}
+	 */
+	public final CompileResult readStreaming(Source source, @Nullable AmongDefinition importDefinition, Consumer<Among> objectConsumer){
+		return new AmongParser(source, this,
+				new AmongRoot(),
+				importDefinition==null ? new AmongDefinition() : importDefinition,
+				Objects.requireNonNull(objectConsumer))
+				.parse();
+	}
+
+	/**
+	 * Compiles the source of {@code previous} with a text edit applied. Only the top level statements touched by the
+	 * edit are parsed again; objects and reports of the other statements are carried over from {@code previous}. Edits
+	 * involving macro, operator or keyword definitions, undef statements or use statements cause the whole source to
+	 * be parsed again.<br>
+	 * Results of {@link AmongEngine#read(Source)} and this method can be compiled incrementally; other results are
+	 * compiled from scratch as if with {@link AmongEngine#read(Source)}. Objects of {@code previous} are shared with
+	 * the new result, so they should not be modified afterwards.
+	 *
+	 * @param previous      Previous compilation result
+	 * @param offset        Position of the edit in the source of {@code previous}
+	 * @param removedLength Number of codepoints removed at {@code offset}
+	 * @param insertedText  Text inserted at {@code offset}
+	 * @return Result of compiling the edited source
+	 * @throws IndexOutOfBoundsException If the edit specifies range outside the source of {@code previous}
+	 * @see AmongParser#parseIncremental(AmongEngine, CompileResult, int, int, CharSequence)
+	 */
+	public final CompileResult readIncremental(CompileResult previous, int offset, int removedLength, CharSequence insertedText){
+		return AmongParser.parseIncremental(this, previous, offset, removedLength, insertedText);
+	}
+
 	/**
 	 * Get an instance of {@link AmongRoot} correlated to specific path. If the instance was not read yet, the engine
 	 * will try to resolve the instance using instance providers, then the source - which will be read with {@link
@@ -2,6 +2,7 @@ package ttmp.among.compile;
 
 import org.jetbrains.annotations.Nullable;
 import ttmp.among.AmongEngine;
+import ttmp.among.compile.AmongToken.TokenType;
 import ttmp.among.definition.AmongDefinition;
 import ttmp.among.definition.Macro;
 import ttmp.among.definition.MacroDefinition;
@@ -37,6 +38,8 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static ttmp.among.compile.AmongToken.TokenType.*;
@@ -58,16 +61,72 @@ public final class AmongParser{
 	private final AmongEngine engine;
 	private final AmongTokenizer tokenizer;
 	private final List<Report> reports = new ArrayList<>();
+	/**
+	 * If present, top level objects are handed to this consumer instead of being added to the root.
+	 */
+	@Nullable private final Consumer<Among> objectConsumer;
+	/**
+	 * Record of top level statements, used for incremental compilation. Only present if the compilation started with
+	 * empty root and import definition, and objects are collected in the root.
+	 */
+	@Nullable private final StatementIndex statements;
+	/**
+	 * Only present during incremental compilation.
+	 */
+	@Nullable private Resync resync;
 
 	private boolean recovering;
+	/**
+	 * Number of errors reported, counted only if {@link AmongEngine#maxErrors} is set.
+	 */
+	private int errors;
+	/**
+	 * Whether the compilation is stopped by {@link AmongEngine#maxErrors}.
+	 */
+	private boolean truncated;
+	/**
+	 * Built on first use, if enabled.
+	 */
+	@Nullable private StructuralIndex structuralIndex;
+	private boolean structuralIndexBuilt;
 	@Nullable private ParsingMacro currentMacro;
 
+	/**
+	 * Stack of frames being run, innermost frame at the end.
+	 */
+	private final List<Frame> frames = new ArrayList<>();
+	/**
+	 * Value returned by the last frame.
+	 */
+	@Nullable private Among returned;
+	/**
+	 * Flag returned by the last frame; used by frames returning boolean instead of value.
+	 */
+	private boolean returnedFlag;
+
 	public AmongParser(Source source, AmongEngine engine, AmongRoot root, AmongDefinition importDefinition){
+		this(source, engine, root, importDefinition, null);
+	}
+	public AmongParser(Source source, AmongEngine engine, AmongRoot root, AmongDefinition importDefinition,
+	                   @Nullable Consumer<Among> objectConsumer){
 		this.engine = engine;
 		this.root = root;
 		this.definition = new AmongDefinition();
 		this.importDefinition = importDefinition;
 		this.tokenizer = new AmongTokenizer(source, this);
+		this.objectConsumer = objectConsumer;
+		this.statements = objectConsumer==null&&!source.isWindowed()&&root.isEmpty()&&importDefinition.isEmpty() ?
+				new StatementIndex(importDefinition) : null;
+	}
+	private AmongParser(Source source, AmongEngine engine, AmongRoot root, AmongDefinition definition,
+	                    StatementIndex statements, int start){
+		this.engine = engine;
+		this.root = root;
+		this.definition = definition;
+		this.importDefinition = statements.importDefinition;
+		this.tokenizer = new AmongTokenizer(source, this, start);
+		this.objectConsumer = null;
+		this.statements = statements;
 	}
 
 	public AmongEngine engine(){
@@ -76,28 +135,130 @@ public final class AmongParser{
 	public AmongDefinition importRoot(){
 		return importDefinition;
 	}
+	public AmongTokenizer tokenizer(){
+		return tokenizer;
+	}
 
 	public CompileResult parse(){
 		try{
 			among();
+		}catch(ConsumerException ex){
+			throw ex.getCause();
+		}catch(ErrorLimitException ignored){
+			// stopped by report(); nothing after this point is read
 		}catch(RuntimeException ex){
-			reportError("Unexpected error", ex);
+			truncated = true;
+			try{
+				reportError("Unexpected error", ex);
+			}catch(ErrorLimitException ignored){}
+		}
+		return new CompileResult(tokenizer.source(), root, definition, reports, truncated ? null : statements, truncated);
+	}
+
+	/**
+	 * Compiles the source produced by applying a text edit to the source of {@code previous}, reusing the parts of
+	 * {@code previous} unaffected by the edit. Top level statements are parsed again starting from the one before the
+	 * edit, until the parser arrives at a statement of {@code previous} placed after the edit; objects and reports of
+	 * the other statements are carried over. The whole source is parsed again if the edit touches definitions (macro,
+	 * operator or keyword definition, undef statement or use statement), or if any definition is placed after the
+	 * edit.<br>
+	 * Only results of {@link AmongEngine#read(Source)} and this method can be compiled incrementally; other results are
+	 * compiled again from scratch. Objects and definition of {@code previous} are shared with the new result, so they
+	 * should not be modified afterwards.
+	 *
+	 * @param engine        Engine used for compilation
+	 * @param previous      Previous compilation result
+	 * @param offset        Position of the edit in the source of {@code previous}
+	 * @param removedLength Number of codepoints removed at {@code offset}
+	 * @param insertedText  Text inserted at {@code offset}
+	 * @return Compilation result of the edited source
+	 * @throws IndexOutOfBoundsException If the edit specifies range outside the source of {@code previous}
+	 */
+	public static CompileResult parseIncremental(AmongEngine engine, CompileResult previous,
+	                                             int offset, int removedLength, CharSequence insertedText){
+		Source oldSource = previous.source();
+		int editEnd = offset+removedLength;
+		if(offset<0||removedLength<0||editEnd>oldSource.totalLength())
+			throw new IndexOutOfBoundsException("offset: "+offset+", removedLength: "+removedLength+
+					", length: "+oldSource.totalLength());
+		Source source = Source.of(new StringBuilder(oldSource.substring(0, offset))
+				.append(insertedText)
+				.append(oldSource.substring(editEnd, oldSource.totalLength())));
+
+		StatementIndex old = previous.statements();
+		// errors carried over from previous are not counted, so the limit can't be enforced
+		if(old==null||old.size()==0||engine.maxErrors>0) return engine.read(source);
+		// Parsing starts from the last statement starting before the edit, as the edit might affect its end. If its
+		// first token was read during the previous statement's lookahead, start from the previous statement instead -
+		// the token might span over the edited portion.
+		int restart = Math.max(0, old.lastStatementBefore(offset));
+		if(restart>0&&old.isBuffered(restart)) restart--;
+		if(old.hasDefinitionFrom(restart)) return engine.read(source);
+		int restartPosition = restart==0 ? 0 : old.start(restart);
+
+		AmongRoot root = new AmongRoot();
+		for(int i = 0; i<old.objectStart(restart); i++)
+			root.addObject(previous.root().getObject(i));
+		StatementIndex statements = new StatementIndex(old.importDefinition);
+		old.copyTo(statements, 0, restart, 0, 0, 0);
+		AmongParser parser = new AmongParser(source, engine, root, previous.definition(), statements, restartPosition);
+		for(int i = 0; i<old.reportStart(restart); i++){
+			Report r = previous.reports().get(i);
+			// reports from reading the first token of the starting statement will be reported again
+			if(!r.hasSourcePosition()||r.sourcePosition()<restartPosition) parser.reports.add(r);
+		}
+		Resync resync = parser.resync = new Resync(old, editEnd, source.totalLength()-oldSource.totalLength());
+		try{
+			parser.among();
+		}catch(RuntimeException ex){
+			return engine.read(source);
+		}
+		if(resync.failed) return engine.read(source);
+
+		int j = resync.statement;
+		if(j>=0){
+			int reportDelta = parser.reports.size()-old.reportStart(j);
+			int objectDelta = root.objectSize()-old.objectStart(j);
+			for(int i = old.objectStart(j); i<previous.root().objectSize(); i++)
+				root.addObject(previous.root().getObject(i));
+			for(int i = old.reportStart(j); i<previous.reports().size(); i++){
+				Report r = previous.reports().get(i);
+				parser.reports.add(r.hasSourcePosition() ? r.withSourcePosition(r.sourcePosition()+resync.delta) : r);
+			}
+			old.copyTo(statements, j, old.size(), resync.delta, reportDelta, objectDelta);
 		}
-		return new CompileResult(tokenizer.source(), root, definition, reports);
+		return new CompileResult(source, root, previous.definition(), parser.reports, statements, false);
 	}
 
 	private void among(){
 		while(true){
 			tokenizer.discard();
-			AmongToken next = tokenizer.next(true, TokenizationMode.PLAIN_WORD);
-			if(next.is(EOF)) return;
-			switch(next.keywordOrEmpty()){
-				case "macro": macroDefinition(false, next.start); continue;
-				case "fn": macroDefinition(true, next.start); continue;
-				case "operator": operatorDefinition(next.start, false); continue;
-				case "keyword": operatorDefinition(next.start, true); continue;
+			int reportStart = reports.size();
+			int objectStart = root.objectSize();
+			boolean buffered = tokenizer.hasBufferedToken();
+			if(tokenizer.next(true, TokenizationMode.PLAIN_WORD)==EOF) return;
+			int start = tokenizer.start();
+			String keyword = tokenizer.keywordOrEmpty();
+			if(resync!=null){
+				if(resync.matches(start, buffered)){
+					reports.subList(reportStart, reports.size()).clear();
+					return;
+				}
+				if(isDefinitionStatement(keyword)){
+					resync.failed = true;
+					return;
+				}
+			}
+			if(statements!=null)
+				statements.add(start, reportStart, objectStart, buffered, isDefinitionStatement(keyword));
+			switch(keyword){
+				case "macro": macroDefinition(false, start); continue;
+				case "fn": macroDefinition(true, start); continue;
+				case "operator": operatorDefinition(start, false); continue;
+				case "keyword": operatorDefinition(start, true); continue;
 				case "undef":
-					switch(tokenizer.next(true, TokenizationMode.PLAIN_WORD).keywordOrEmpty()){
+					tokenizer.next(true, TokenizationMode.PLAIN_WORD);
+					switch(tokenizer.keywordOrEmpty()){
 						case "macro": undefMacro(false); break;
 						case "fn": undefMacro(true); break;
 						case "operator": undefOperation(false); break;
@@ -110,14 +271,17 @@ public final class AmongParser{
 					}
 					expectStmtEnd("Expected ',' or newline after undef statement");
 					continue;
-				case "use": use(next.start); continue;
+				case "use": use(start); continue;
 				default:
-					tokenizer.reset(next.isSimpleLiteral());
+					if(tokenizer.isSimpleLiteral()){
+						// the literal is read again with another mode, which reports its errors again
+						dropReports(reportStart);
+						tokenizer.reset(true);
+					}else tokenizer.reset(false);
 					Among a = nameable(false);
 					if(a==null){
-						next = tokenizer.next(true, TokenizationMode.VALUE);
-						if(!next.isLiteral()){
-							if(next.is(COMMA))
+						if(!tokenizer.isLiteral()){
+							if(tokenizer.next(true, TokenizationMode.VALUE)==COMMA)
 								reportError("Redundant comma");
 							else{
 								reportError("Top level statements can only be macro/operator/"+
@@ -126,14 +290,27 @@ public final class AmongParser{
 							}
 							continue;
 						}
-						a = Among.value(next.expectLiteral());
+						a = Among.value(tokenizer.expectLiteral());
 					}
-					root.addObject(a);
+					if(objectConsumer!=null){
+						try{
+							objectConsumer.accept(a);
+						}catch(RuntimeException ex){
+							throw new ConsumerException(ex);
+						}
+					}else root.addObject(a);
 					stmtEnd();
 			}
 		}
 	}
 
+	private static boolean isDefinitionStatement(String keyword){
+		switch(keyword){
+			case "macro": case "fn": case "operator": case "keyword": case "undef": case "use": return true;
+			default: return false;
+		}
+	}
+
 	/**
 	 * Checks if there's appropriate statement end; if not, tokens are discarded until a statement end is found.
 	 *
@@ -154,34 +331,34 @@ public final class AmongParser{
 	 */
 	private boolean stmtEnd(){
 		tokenizer.discard();
-		AmongToken next = tokenizer.next(false, TokenizationMode.UNEXPECTED);
-		switch(next.type){
+		switch(tokenizer.next(false, TokenizationMode.UNEXPECTED)){
 			case BR:
 				tokenizer.discard();
-				next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
-				if(!next.is(COMMA)) tokenizer.reset(next.is(ERROR));
+				TokenType next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
+				if(next!=COMMA) tokenizer.reset(next==ERROR);
 			case EOF: case COMMA: return true;
-			default: tokenizer.reset(next.is(ERROR)); return false;
+			case ERROR: tokenizer.reset(true); return false;
+			default: tokenizer.reset(false); return false;
 		}
 	}
 
 	@Nullable private String definitionName(TokenizationMode mode){
 		tokenizer.discard();
-		AmongToken next = tokenizer.next(true, mode);
-		if(!next.isLiteral()){
+		tokenizer.next(true, mode);
+		if(!tokenizer.isLiteral()){
 			reportError("Expected name");
 			tokenizer.reset();
 			tryToRecover(mode);
 			return null;
 		}
-		return next.expectLiteral();
+		return tokenizer.expectLiteral();
 	}
 
 	private void macroDefinition(boolean fn, int startIndex){
 		String name = definitionName(TokenizationMode.MACRO_NAME);
 		if(name==null) return;
 		tokenizer.discard();
-		switch(tokenizer.next(true, TokenizationMode.PLAIN_WORD).type){
+		switch(tokenizer.next(true, TokenizationMode.PLAIN_WORD)){
 			case COLON: macroDefinition(startIndex, name, fn ? MacroType.ACCESS : MacroType.CONST); break;
 			case L_BRACE: macroDefinition(startIndex, name, fn ? MacroType.OBJECT_FN : MacroType.OBJECT); break;
 			case L_BRACKET: macroDefinition(startIndex, name, fn ? MacroType.LIST_FN : MacroType.LIST); break;
@@ -202,7 +379,7 @@ public final class AmongParser{
 				default: throw new IllegalStateException("Unreachable");
 			}
 			tokenizer.discard();
-			if(!tokenizer.next(true, TokenizationMode.UNEXPECTED).is(COLON)){
+			if(tokenizer.next(true, TokenizationMode.UNEXPECTED)!=COLON){
 				reportError("Expected ':' after parameter definition");
 				tokenizer.reset();
 				tryToRecover(TokenizationMode.WORD);
@@ -220,30 +397,30 @@ public final class AmongParser{
 		this.currentMacro = null;
 	}
 
-	private void macroParam(ParsingMacro macro, AmongToken.TokenType closure){
+	private void macroParam(ParsingMacro macro, TokenType closure){
 		while(true){
-			AmongToken next = tokenizer.next(true, TokenizationMode.PARAM_NAME);
-			if(next.is(closure)) break;
-			if(next.is(EOF)) break; // It will be reported in defMacro()
-			if(!next.is(PARAM_NAME)){
+			TokenType next = tokenizer.next(true, TokenizationMode.PARAM_NAME);
+			if(next==closure) break;
+			if(next==EOF) break; // It will be reported in defMacro()
+			if(next!=PARAM_NAME){
 				reportError("Expected parameter name");
 				macro.invalid = true;
 				if(tryToRecover(TokenizationMode.PARAM_NAME, closure, true)) break;
 				else continue;
 			}
-			String name = next.expectLiteral();
-			int nameStart = next.start;
+			String name = tokenizer.expectLiteral();
+			int nameStart = tokenizer.start();
 			next = tokenizer.next(true, TokenizationMode.PARAM_NAME);
 
 			Among defaultValue;
-			if(next.is(EQ)){
+			if(next==EQ){
 				defaultValue = exprOrError();
 				next = tokenizer.next(true, TokenizationMode.PARAM_NAME);
 			}else defaultValue = null;
 			macro.newParam(name, defaultValue, nameStart);
 
-			if(next.is(closure)) break;
-			else if(!next.is(COMMA)){
+			if(next==closure) break;
+			else if(next!=COMMA){
 				reportError("Expected ',' or "+closure.friendlyName());
 				macro.invalid = true;
 				if(tryToRecover(TokenizationMode.PARAM_NAME, closure, true)) break;
@@ -254,7 +431,8 @@ public final class AmongParser{
 	private void operatorDefinition(int startIndex, boolean keyword){
 		String name = definitionName(TokenizationMode.WORD);
 		if(name==null) return;
-		if(!tokenizer.next(true, TokenizationMode.PLAIN_WORD).is(PLAIN_WORD, "as")){
+		tokenizer.next(true, TokenizationMode.PLAIN_WORD);
+		if(!tokenizer.is(PLAIN_WORD, "as")){
 			reportError("Expected 'as'");
 			tryToRecover(TokenizationMode.UNEXPECTED, null, true, true);
 			return;
@@ -266,19 +444,19 @@ public final class AmongParser{
 			if(p!=null) list.add(p);
 			else invalid = true;
 			tokenizer.discard();
-			AmongToken next = tokenizer.next(true, TokenizationMode.PLAIN_WORD);
-			if(next.is(PLAIN_WORD, "and")) continue;
+			TokenType next = tokenizer.next(true, TokenizationMode.PLAIN_WORD);
+			if(tokenizer.is(PLAIN_WORD, "and")) continue;
 			String alias;
-			if(next.is(COLON)){
-				next = tokenizer.next(true, TokenizationMode.VALUE);
-				if(!next.isLiteral()){
+			if(next==COLON){
+				tokenizer.next(true, TokenizationMode.VALUE);
+				if(!tokenizer.isLiteral()){
 					reportError("Expected literal");
 					tryToRecover(TokenizationMode.UNEXPECTED, null, true, true);
 					return;
-				}else alias = next.expectLiteral();
+				}else alias = tokenizer.expectLiteral();
 			}else{
 				alias = null;
-				tokenizer.reset(next.isLiteral());
+				tokenizer.reset(tokenizer.isLiteral());
 			}
 			if(!invalid){
 				for(TypeAndProperty e : list){
@@ -306,8 +484,8 @@ public final class AmongParser{
 			tokenizer.discard();
 			OperatorType t = null;
 			OperatorPropertyEnum e = null;
-			AmongToken next = tokenizer.next(false, TokenizationMode.PLAIN_WORD);
-			switch(next.keywordOrEmpty()){
+			TokenType next = tokenizer.next(false, TokenizationMode.PLAIN_WORD);
+			switch(tokenizer.keywordOrEmpty()){
 				case "binary": t = OperatorType.BINARY; break;
 				case "prefix": t = OperatorType.PREFIX; break;
 				case "postfix": t = OperatorType.POSTFIX; break;
@@ -316,10 +494,11 @@ public final class AmongParser{
 				case "accessor": e = OperatorPropertyEnum.ACCESSOR; break;
 				case "and": tokenizer.reset(); break L;
 				case "":
-					switch(next.type){
+					switch(next){
 						case L_PAREN:
 							tokenizer.discard();
-							priority = tokenizer.next(true, TokenizationMode.VALUE).asNumber();
+							tokenizer.next(true, TokenizationMode.VALUE);
+							priority = tokenizer.asNumber();
 							if(Double.isNaN(priority)){
 								reportError("Number expected");
 								tokenizer.reset();
@@ -373,9 +552,8 @@ public final class AmongParser{
 		String name = definitionName(TokenizationMode.MACRO_NAME);
 		if(name==null) return;
 		tokenizer.discard();
-		AmongToken next = tokenizer.next(false, TokenizationMode.PLAIN_WORD);
 		MacroType type;
-		switch(next.type){
+		switch(tokenizer.next(false, TokenizationMode.PLAIN_WORD)){
 			case BR: case EOF: case COMMA: tokenizer.reset(); type = fn ? MacroType.ACCESS : MacroType.CONST; break;
 			case L_BRACE: expectNext(R_BRACE); type = fn ? MacroType.OBJECT_FN : MacroType.OBJECT; break;
 			case L_BRACKET: expectNext(R_BRACKET); type = fn ? MacroType.LIST_FN : MacroType.LIST; break;
@@ -397,13 +575,13 @@ public final class AmongParser{
 	}
 
 	private void undefUse(){
-		AmongToken next = tokenizer.next(false, TokenizationMode.VALUE);
-		if(!next.isLiteral()){
+		tokenizer.next(false, TokenizationMode.VALUE);
+		if(!tokenizer.isLiteral()){
 			reportError("Expected path");
 			tryToRecover(TokenizationMode.UNEXPECTED, null, true, true);
 			return;
 		}
-		String path = next.expectLiteral();
+		String path = tokenizer.expectLiteral();
 		RootAndDefinition imported = engine.getOrReadFrom(path);
 		if(imported==null){
 			reportError("Invalid use statement: Cannot resolve definitions from path '"+path+"'");
@@ -421,16 +599,16 @@ public final class AmongParser{
 
 	private void use(int startIndex){
 		tokenizer.discard();
-		AmongToken next = tokenizer.next(false, TokenizationMode.PLAIN_WORD);
-		boolean pub = next.keywordOrEmpty().equals("public");
+		tokenizer.next(false, TokenizationMode.PLAIN_WORD);
+		boolean pub = tokenizer.keywordOrEmpty().equals("public");
 		if(!pub) tokenizer.reset(true);
-		next = tokenizer.next(false, TokenizationMode.VALUE);
-		if(!next.isLiteral()){
+		tokenizer.next(false, TokenizationMode.VALUE);
+		if(!tokenizer.isLiteral()){
 			reportError("Expected path");
 			skipUntilLineBreak();
 			return;
 		}
-		String path = next.expectLiteral();
+		String path = tokenizer.expectLiteral();
 		RootAndDefinition imported = engine.getOrReadFrom(path);
 		if(imported==null){
 			reportError("Invalid use statement: Cannot resolve definitions from path '"+path+"'", startIndex);
@@ -450,8 +628,8 @@ public final class AmongParser{
 		});
 	}
 
-	private void expectNext(AmongToken.TokenType type){
-		if(!tokenizer.next(true, TokenizationMode.UNEXPECTED).is(type)){
+	private void expectNext(TokenType type){
+		if(tokenizer.next(true, TokenizationMode.UNEXPECTED)!=type){
 			reportError("Expected "+type);
 			tryToRecover(TokenizationMode.UNEXPECTED, type, false, false);
 		}
@@ -462,18 +640,20 @@ public final class AmongParser{
 		return among==null ? Among.value("ERROR") : among;
 	}
 	@Nullable private Among expr(){
-		tokenizer.discard();
-		Among a = nameable(false);
-		if(a!=null) return a;
-		tokenizer.reset(true);
-		AmongToken next = tokenizer.next(true, TokenizationMode.VALUE);
-		if(!next.isLiteral()){
-			reportError("Expected value");
-			tokenizer.reset(true);
-			return null;
-		}
-		AmongPrimitive p = Among.value(next.expectLiteral());
-		return next.is(QUOTED_PRIMITIVE)||resolveParamRef(p) ? p : primitiveMacro(p, next.start);
+		run(new ExprFrame());
+		return returned;
+	}
+
+	/**
+	 * Creates primitive from the literal of the current token.
+	 */
+	private Among primitive(){
+		boolean quoted = tokenizer.is(QUOTED_PRIMITIVE);
+		int start = tokenizer.start();
+		AmongPrimitive p = tokenizer.is(NUMBER) ?
+				Among.value(tokenizer.expectLiteral(), tokenizer.asNumber()) :
+				Among.value(tokenizer.expectLiteral());
+		return quoted||resolveParamRef(p) ? p : primitiveMacro(p, start);
 	}
 
 	private boolean resolveParamRef(Among target){
@@ -481,255 +661,15 @@ public final class AmongParser{
 	}
 
 	@Nullable private Among nameable(boolean operation){
-		tokenizer.discard();
-		AmongToken next = tokenizer.next(true, operation ? TokenizationMode.OPERATION : TokenizationMode.VALUE);
-		switch(next.type){
-			case L_BRACE: return obj(null);
-			case L_BRACKET: return list(null);
-			case L_PAREN:{
-				AmongList o = oper(null);
-				return engine.collapseUnaryOperation&&!o.hasName()&&o.size()==1 ? o.get(0) : o;
-			}
-			default:
-				if(next.isLiteral()){
-					// lookahead to find if it's nameable instance
-					switch(tokenizer.next(operation, TokenizationMode.UNEXPECTED).type){
-						case L_BRACE:{
-							AmongObject o = obj(next.expectLiteral());
-							return next.is(QUOTED_PRIMITIVE)||resolveParamRef(o) ? o : objectMacro(o, next.start);
-						}
-						case L_BRACKET:{
-							AmongList l = list(next.expectLiteral());
-							return next.is(QUOTED_PRIMITIVE)||resolveParamRef(l) ? l : listMacro(l, next.start);
-						}
-						case L_PAREN:{
-							AmongList o = oper(next.expectLiteral());
-							return next.is(QUOTED_PRIMITIVE)||resolveParamRef(o) ? o : operationMacro(o, next.start);
-						}
-						default: tokenizer.reset(true); return null;
-					}
-				}
-				tokenizer.reset();
-				return null;
-		}
-	}
-
-	private AmongObject obj(@Nullable String name){
-		AmongObject object = Among.namedObject(name);
-		L:
-		while(true){
-			AmongToken keyToken = tokenizer.next(true, TokenizationMode.KEY);
-			switch(keyToken.type){
-				case EOF: reportError("Unterminated object");
-				case R_BRACE: break L;
-				case COMMA: reportError("Redundant comma"); continue;
-			}
-			if(!keyToken.isLiteral()){
-				reportError("Expected property key");
-				if(tryToRecover(TokenizationMode.KEY, R_BRACE, true)) break;
-				else continue;
-			}
-
-			tokenizer.discard();
-			if(!tokenizer.next(true, TokenizationMode.UNEXPECTED).is(COLON)){
-				reportError("Expected ':' after property key");
-				tokenizer.reset();
-				if(tryToRecover(TokenizationMode.UNEXPECTED, R_BRACE, true)) break;
-				else continue;
-			}
-			String key = keyToken.expectLiteral();
-			if(object.hasProperty(key))
-				report(engine.allowDuplicateObjectProperty ? ReportType.WARN : ReportType.ERROR,
-						"Property '"+key+"' is already defined", keyToken.start);
-
-			Among expr = exprOrError();
-
-			if(!object.hasProperty(key)) object.setProperty(key, expr);
-			AmongToken next = tokenizer.next(false, TokenizationMode.UNEXPECTED);
-			switch(next.type){
-				case BR:
-					tokenizer.discard();
-					next = tokenizer.next(true, TokenizationMode.KEY);
-					if(!next.is(AmongToken.TokenType.COMMA)) tokenizer.reset();
-					break;
-				case COMMA: break;
-				case EOF: reportError("Unterminated object");
-				case R_BRACE: break L;
-				default:
-					reportError("Each object property should be separated with either line breaks or ','");
-					if(tryToRecover(TokenizationMode.KEY, R_BRACE, true)) break;
-			}
-		}
-		return object;
-	}
-
-	private AmongList list(@Nullable String name){
-		AmongList list = Among.namedList(name);
-		L:
-		while(true){
-			tokenizer.discard();
-			AmongToken next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
-			switch(next.type){
-				case EOF: reportError("Unterminated list");
-				case R_BRACKET: break L;
-				case COMMA: reportError("Redundant comma"); continue;
-			}
-			tokenizer.reset(next.is(ERROR));
-			Among expr = expr();
-			if(expr!=null) list.add(expr);
-			next = tokenizer.next(false, TokenizationMode.UNEXPECTED);
-			switch(next.type){
-				case BR:
-					tokenizer.discard();
-					next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
-					if(!next.is(AmongToken.TokenType.COMMA))
-						tokenizer.reset(next.is(ERROR));
-					break;
-				case COMMA: break;
-				case EOF: reportError("Unterminated list");
-				case R_BRACKET: break L;
-				default:
-					reportError("Each value should be separated with either line breaks or ','");
-					if(tryToRecover(TokenizationMode.VALUE, R_BRACKET, true)) break;
-			}
-		}
-		return list;
-	}
-
-	private AmongList oper(@Nullable String name){
-		AmongList list = Among.namedList(name);
-		list.setOperation(true);
-		L:
-		while(true){
-			tokenizer.discard();
-			switch(tokenizer.next(true, TokenizationMode.OPERATION).type){
-				case EOF: reportError("Unterminated operation");
-				case R_PAREN: break L;
-				case COMMA: reportError("Redundant comma"); continue;
-			}
-			tokenizer.reset();
-			list.add(operationExpression(importDefinition.operators().priorityGroup(), 0));
-			tokenizer.discard();
-			switch(tokenizer.next(true, TokenizationMode.OPERATION).type){
-				case COMMA: continue;
-				case EOF: reportError("Unterminated operation");
-				case R_PAREN: break L;
-				default:
-					reportError("Each term should be separated with ','");
-					tokenizer.reset();
-			}
-		}
-		return list;
-	}
-
-	private Among operationExpression(List<OperatorRegistry.PriorityGroup> operators, int i){
-		if(i<operators.size()){ // check for operators and keywords
-			OperatorRegistry.PriorityGroup group = operators.get(i);
-			switch(group.type()){
-				case BINARY: return group.isRightAssociative() ? rightAssociativeBinary(operators, i) : binary(operators, i);
-				case POSTFIX: return postfix(operators, i);
-				case PREFIX: return prefix(operators, i);
-				default: throw new IllegalStateException("Unreachable");
-			}
-		}
-		// read primitive
-		tokenizer.discard();
-		Among a = nameable(true);
-		if(a!=null) return a;
-		tokenizer.reset();
-		AmongToken next = tokenizer.next(true, TokenizationMode.OPERATION);
-		if(!next.isLiteral()){
-			reportError("Expected value");
-			tokenizer.reset();
-			if(tryToRecover(TokenizationMode.UNEXPECTED, R_PAREN, true, true))
-				tokenizer.reset();
-			return Among.value("ERROR");
-		}
-		AmongPrimitive p = Among.value(next.expectLiteral());
-		return next.is(QUOTED_PRIMITIVE)||resolveParamRef(p) ? p : primitiveMacro(p, next.start);
-	}
-
-	private Among binary(List<OperatorRegistry.PriorityGroup> operators, int i){
-		Among a = operationExpression(operators, i+1);
-		while(true){
-			tokenizer.discard();
-			AmongToken next = tokenizer.next(true, TokenizationMode.OPERATION);
-			if(next.isOperatorOrKeyword()){
-				OperatorDefinition op = operators.get(i).get(next.expectLiteral());
-				if(op!=null){
-					Among b = operationExpression(operators, i+1);
-					if(op.hasProperty(OperatorProperty.ACCESSOR)){
-						if(b.isPrimitive()){
-							a = accessMacro(Among.namedList(op.aliasOrName()+b.asPrimitive().getValue(), a), next.start);
-						}else{
-							AmongNameable b2 = b.asNameable().copy();
-							b2.setName("");
-							AmongList call = Among.namedList(op.aliasOrName()+b.asNameable().getName(), a, b2);
-							a = b.isObj() ? objectFnMacro(call, next.start) :
-									b.asList().isOperation() ? operationFnMacro(call, next.start) :
-											listFnMacro(call, next.start);
-						}
-					}else{
-						AmongList list = Among.namedList(op.aliasOrName(), a, b);
-						list.setOperation(true);
-						a = operationMacro(list, next.start);
-					}
-					continue;
-				}
-			}
-			tokenizer.reset();
-			return a;
-		}
-	}
-
-	private Among rightAssociativeBinary(List<OperatorRegistry.PriorityGroup> operators, int i){
-		Among a = operationExpression(operators, i+1);
-		tokenizer.discard();
-		AmongToken next = tokenizer.next(true, TokenizationMode.OPERATION);
-		if(next.isOperatorOrKeyword()){
-			OperatorDefinition op = operators.get(i).get(next.expectLiteral());
-			if(op!=null){
-				AmongList list = Among.namedList(op.aliasOrName(), a, rightAssociativeBinary(operators, i));
-				list.setOperation(true);
-				return operationMacro(list, next.start);
-			}
-		}
-		tokenizer.reset();
-		return a;
+		run(new NameableFrame(operation));
+		return returned;
 	}
 
-	private Among postfix(List<OperatorRegistry.PriorityGroup> operators, int i){
-		Among a = operationExpression(operators, i+1);
-		while(true){
-			tokenizer.discard();
-			AmongToken next = tokenizer.next(true, TokenizationMode.OPERATION);
-			if(next.isOperatorOrKeyword()){
-				OperatorDefinition op = operators.get(i).get(next.expectLiteral());
-				if(op!=null){
-					AmongList list = Among.namedList(op.aliasOrName(), a);
-					list.setOperation(true);
-					a = operationMacro(list, next.start);
-					continue;
-				}
-			}
-			tokenizer.reset();
-			return a;
-		}
-	}
-
-	private Among prefix(List<OperatorRegistry.PriorityGroup> operators, int i){
-		tokenizer.discard();
-		AmongToken next = tokenizer.next(true, TokenizationMode.OPERATION);
-		if(next.isOperatorOrKeyword()){
-			OperatorDefinition op = operators.get(i).get(next.expectLiteral());
-			if(op!=null){
-				AmongList list = Among.namedList(op.aliasOrName(), prefix(operators, i));
-				list.setOperation(true);
-				return operationMacro(list, next.start);
-			}
-		}
-		tokenizer.reset();
-		return operationExpression(operators, i+1);
+	/**
+	 * @return Precedence of the current token, or {@code null} if it's not an operator or keyword
+	 */
+	@Nullable private OperatorRegistry.Precedence precedence(OperatorRegistry operators){
+		return tokenizer.isOperatorOrKeyword() ? operators.precedence(tokenizer.expectLiteral()) : null;
 	}
 
 	private Among primitiveMacro(AmongPrimitive primitive, int sourcePosition){
@@ -768,6 +708,8 @@ public final class AmongParser{
 			try{
 				Among among = macro.apply(target, engine.copyMacroConstant, (t, s) -> report(t, s, sourcePosition));
 				if(among!=null) return among;
+			}catch(ErrorLimitException ex){
+				throw ex;
 			}catch(RuntimeException ex){
 				report(ReportType.ERROR, "Unexpected error on macro processing", sourcePosition, ex);
 			}
@@ -802,16 +744,30 @@ public final class AmongParser{
 	}
 
 	void report(ReportType type, String message, @Nullable Throwable ex, String... hints){
-		AmongToken lastToken = tokenizer.lastToken();
-		report(type, message, lastToken!=null ? lastToken.start : -1, ex, hints);
+		report(type, message, tokenizer.start(), ex, hints);
 	}
 	void report(ReportType type, String message, int srcIndex, @Nullable Throwable ex, String... hints){
-		if(!recovering) reports.add(new Report(type, message, srcIndex, ex, hints));
+		if(recovering) return;
+		reports.add(new Report(tokenizer.source(), type, message, srcIndex, ex, hints));
+		if(type==ReportType.ERROR&&engine.maxErrors>0&&++errors>=engine.maxErrors){
+			truncated = true;
+			throw new ErrorLimitException();
+		}
+	}
+
+	/**
+	 * Removes reports from {@code reportStart} onward, as if they were never reported.
+	 */
+	private void dropReports(int reportStart){
+		List<Report> dropped = reports.subList(reportStart, reports.size());
+		for(Report r : dropped)
+			if(r.type()==ReportType.ERROR) errors--;
+		dropped.clear();
 	}
 
 	private void skipUntilLineBreak(){
 		while(true){
-			switch(tokenizer.next(false, TokenizationMode.WORD).type){
+			switch(tokenizer.next(false, TokenizationMode.WORD)){
 				case BR: case EOF: return;
 			}
 		}
@@ -835,7 +791,7 @@ public final class AmongParser{
 	 * @param returnOnComma This method return on comma if the value is {@code true}
 	 * @return Whether it found the closure or not
 	 */
-	private boolean tryToRecover(TokenizationMode mode, @Nullable AmongToken.TokenType closure, boolean returnOnComma){
+	private boolean tryToRecover(TokenizationMode mode, @Nullable TokenType closure, boolean returnOnComma){
 		return tryToRecover(mode, closure, returnOnComma, true);
 	}
 	/**
@@ -848,26 +804,580 @@ public final class AmongParser{
 	 * @param returnOnLineBreak Returns on line break if the value is {@code true}
 	 * @return Whether it found the closure or not
 	 */
-	private boolean tryToRecover(TokenizationMode mode, @Nullable AmongToken.TokenType closure, boolean returnOnComma, boolean returnOnLineBreak){
-		boolean prevRecovering = this.recovering;
-		this.recovering = true;
-		while(true){
-			tokenizer.discard();
-			AmongToken.TokenType t = tokenizer.next(false, mode).type;
-			switch(t){
-				case BR: if(!returnOnLineBreak) continue;
-				case EOF: this.recovering = prevRecovering; return false; // continue from here (well, there might not be much to do if it's EOF lmao)
-				case COMMA:
-					if(!returnOnComma) continue;
-					this.recovering = prevRecovering;
-					return false;
-				case L_BRACE: case L_BRACKET: case L_PAREN:
+	private boolean tryToRecover(TokenizationMode mode, @Nullable TokenType closure, boolean returnOnComma, boolean returnOnLineBreak){
+		run(new RecoverFrame(mode, closure, returnOnComma, returnOnLineBreak));
+		return returnedFlag;
+	}
+
+	/**
+	 * Runs the frame, along with all the frames it calls, until it returns.
+	 */
+	private void run(Frame frame){
+		int base = frames.size();
+		frames.add(frame);
+		try{
+			while(frames.size()>base) frames.get(frames.size()-1).step();
+		}finally{
+			frames.subList(base, frames.size()).clear();
+		}
+	}
+
+	@Nullable private StructuralIndex structuralIndex(){
+		if(!structuralIndexBuilt){
+			structuralIndexBuilt = true;
+			Source source = tokenizer.source();
+			if(engine.structuralIndex&&!source.isWindowed())
+				structuralIndex = StructuralIndex.build(source, engine.structuralIndexChunkSize, engine.structuralIndexPool);
+		}
+		return structuralIndex;
+	}
+
+	/**
+	 * @param openingBracket Position of the opening bracket of an unterminated object, list or operation
+	 * @return Hints pointing to the closing bracket of different kind that was presumably meant to close the opening
+	 * bracket, or empty array if there's none or {@link AmongEngine#structuralIndex} is disabled
+	 */
+	private String[] bracketHints(int openingBracket){
+		StructuralIndex index = structuralIndex();
+		int mismatch = index!=null ? index.mismatchedBracket(openingBracket) : -1;
+		if(mismatch<0) return new String[0];
+		Source source = tokenizer.source();
+		return new String[]{
+				"'"+(char)source.codePointAt(openingBracket)+"' at "+source.getLnCol(openingBracket)+
+						" is closed with '"+(char)source.codePointAt(mismatch)+"' at "+source.getLnCol(mismatch)
+		};
+	}
+
+	/**
+	 * Part of the parsing process kept in {@link AmongParser#frames} instead of the call stack, so that depth of
+	 * nested values is only limited by memory. Each frame runs until it either calls another frame or returns; the
+	 * caller is then resumed on the state it specified, with result of the callee in {@link AmongParser#returned} or
+	 * {@link AmongParser#returnedFlag}.
+	 */
+	private abstract class Frame{
+		int state;
+
+		abstract void step();
+
+		/**
+		 * Calls another frame, resuming this frame with {@code resumeState} after the callee returns.
+		 */
+		void call(int resumeState, Frame frame){
+			this.state = resumeState;
+			frames.add(frame);
+		}
+
+		void returnValue(@Nullable Among value){
+			returned = value;
+			frames.remove(frames.size()-1);
+		}
+
+		void returnFlag(boolean flag){
+			returnedFlag = flag;
+			frames.remove(frames.size()-1);
+		}
+	}
+
+	/**
+	 * Reads a value, or returns {@code null} if there isn't one.
+	 */
+	private final class ExprFrame extends Frame{
+		static final int START = 0;
+		static final int NAMEABLE_READ = 1;
+
+		@Override void step(){
+			if(state==START){
+				tokenizer.discard();
+				call(NAMEABLE_READ, new NameableFrame(false));
+				return;
+			}
+			if(returned!=null) returnValue(returned);
+			else if(tokenizer.isLiteral()) returnValue(primitive()); // literal left by lookahead
+			else{
+				tokenizer.reset(true);
+				tokenizer.next(true, TokenizationMode.VALUE);
+				reportError("Expected value");
+				tokenizer.reset(true);
+				returnValue(null);
+			}
+		}
+	}
+
+	/**
+	 * Reads an object, a list or an operation, with or without name. Returns {@code null} if there isn't one; if it was
+	 * a literal not followed by a bracket, the literal is left as the current token.
+	 */
+	private final class NameableFrame extends Frame{
+		static final int START = 0;
+		static final int READ = 1;
+		static final int OPERATION_READ = 2;
+		static final int NAMED_OBJECT_READ = 3;
+		static final int NAMED_LIST_READ = 4;
+		static final int NAMED_OPERATION_READ = 5;
+
+		private final boolean operation;
+		private boolean quoted;
+		private int start;
+
+		NameableFrame(boolean operation){
+			this.operation = operation;
+		}
+
+		@Override void step(){
+			switch(state){
+				case START:
+					tokenizer.discard();
+					switch(tokenizer.next(true, operation ? TokenizationMode.OPERATION : TokenizationMode.VALUE)){
+						case L_BRACE: call(READ, new ObjFrame(null)); return;
+						case L_BRACKET: call(READ, new ListFrame(null)); return;
+						case L_PAREN: call(OPERATION_READ, new OperFrame(null)); return;
+						default:
+							if(tokenizer.isLiteral()){
+								quoted = tokenizer.is(QUOTED_PRIMITIVE);
+								start = tokenizer.start();
+								int name = tokenizer.index();
+								// lookahead to find if it's nameable instance
+								tokenizer.mark();
+								switch(tokenizer.next(operation, TokenizationMode.UNEXPECTED)){
+									case L_BRACE: call(NAMED_OBJECT_READ, new ObjFrame(tokenizer.expectLiteral(name))); return;
+									case L_BRACKET: call(NAMED_LIST_READ, new ListFrame(tokenizer.expectLiteral(name))); return;
+									case L_PAREN: call(NAMED_OPERATION_READ, new OperFrame(tokenizer.expectLiteral(name))); return;
+									default:
+										tokenizer.rewind(); // leave the literal as current token
+										returnValue(null);
+										return;
+								}
+							}
+							tokenizer.reset();
+							returnValue(null);
+							return;
+					}
+				case READ:
+					returnValue(returned);
+					return;
+				case OPERATION_READ:{
+					AmongList o = Objects.requireNonNull(returned).asList();
+					returnValue(engine.collapseUnaryOperation&&!o.hasName()&&o.size()==1 ? o.get(0) : o);
+					return;
+				}
+				case NAMED_OBJECT_READ:{
+					AmongObject o = Objects.requireNonNull(returned).asObj();
+					returnValue(quoted||resolveParamRef(o) ? o : objectMacro(o, start));
+					return;
+				}
+				case NAMED_LIST_READ:{
+					AmongList l = Objects.requireNonNull(returned).asList();
+					returnValue(quoted||resolveParamRef(l) ? l : listMacro(l, start));
+					return;
+				}
+				case NAMED_OPERATION_READ:{
+					AmongList o = Objects.requireNonNull(returned).asList();
+					returnValue(quoted||resolveParamRef(o) ? o : operationMacro(o, start));
+					return;
+				}
+				default: throw new IllegalStateException("Unreachable");
+			}
+		}
+	}
+
+	/**
+	 * Reads properties of an object, after the opening bracket.
+	 */
+	private final class ObjFrame extends Frame{
+		static final int START = 0;
+		static final int KEY_RECOVERED = 1;
+		static final int VALUE_READ = 2;
+		static final int VALUE_RECOVERED = 3;
+
+		private final AmongObject object;
+		private int start;
+		private String key = "";
+
+		ObjFrame(@Nullable String name){
+			this.object = Among.namedObject(name);
+		}
+
+		@Override void step(){
+			switch(state){
+				case START:
+					start = tokenizer.start();
+					break;
+				case KEY_RECOVERED:
+					if(returnedFlag){
+						returnValue(object);
+						return;
+					}
+					break;
+				case VALUE_READ:
+					if(!object.hasProperty(key)) object.setProperty(key, returned==null ? Among.value("ERROR") : returned);
+					switch(tokenizer.next(false, TokenizationMode.UNEXPECTED)){
+						case BR:
+							tokenizer.discard();
+							if(tokenizer.next(true, TokenizationMode.KEY)!=COMMA) tokenizer.reset();
+							break;
+						case COMMA: break;
+						case EOF: reportError("Unterminated object", bracketHints(start));
+						case R_BRACE:
+							returnValue(object);
+							return;
+						default:
+							reportError("Each object property should be separated with either line breaks or ','");
+							call(VALUE_RECOVERED, new RecoverFrame(TokenizationMode.KEY, R_BRACE, true, true));
+							return;
+					}
+					break;
+			}
+			while(true){
+				switch(tokenizer.next(true, TokenizationMode.KEY)){
+					case EOF: reportError("Unterminated object", bracketHints(start));
+					case R_BRACE:
+						returnValue(object);
+						return;
+					case COMMA: reportError("Redundant comma"); continue;
+				}
+				if(!tokenizer.isLiteral()){
+					reportError("Expected property key");
+					call(KEY_RECOVERED, new RecoverFrame(TokenizationMode.KEY, R_BRACE, true, true));
+					return;
+				}
+				key = tokenizer.expectLiteral();
+				int keyStart = tokenizer.start();
+
+				tokenizer.discard();
+				if(tokenizer.next(true, TokenizationMode.UNEXPECTED)!=COLON){
+					reportError("Expected ':' after property key");
 					tokenizer.reset();
-					nameable(false); // read object and throw it away
-					continue;
-				default: if(t==closure){
-					this.recovering = prevRecovering;
-					return true;
+					call(KEY_RECOVERED, new RecoverFrame(TokenizationMode.UNEXPECTED, R_BRACE, true, true));
+					return;
+				}
+				if(object.hasProperty(key))
+					report(engine.allowDuplicateObjectProperty ? ReportType.WARN : ReportType.ERROR,
+							"Property '"+key+"' is already defined", keyStart);
+				call(VALUE_READ, new ExprFrame());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads elements of a list, after the opening bracket.
+	 */
+	private final class ListFrame extends Frame{
+		static final int START = 0;
+		static final int VALUE_READ = 1;
+		static final int VALUE_RECOVERED = 2;
+
+		private final AmongList list;
+		private int start;
+
+		ListFrame(@Nullable String name){
+			this.list = Among.namedList(name);
+		}
+
+		@Override void step(){
+			switch(state){
+				case START:
+					start = tokenizer.start();
+					break;
+				case VALUE_READ:
+					if(returned!=null) list.add(returned);
+					switch(tokenizer.next(false, TokenizationMode.UNEXPECTED)){
+						case BR:
+							tokenizer.discard();
+							TokenType next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
+							if(next!=COMMA) tokenizer.reset(next==ERROR);
+							break;
+						case COMMA: break;
+						case EOF: reportError("Unterminated list", bracketHints(start));
+						case R_BRACKET:
+							returnValue(list);
+							return;
+						default:
+							reportError("Each value should be separated with either line breaks or ','");
+							call(VALUE_RECOVERED, new RecoverFrame(TokenizationMode.VALUE, R_BRACKET, true, true));
+							return;
+					}
+					break;
+			}
+			while(true){
+				tokenizer.discard();
+				TokenType next = tokenizer.next(true, TokenizationMode.UNEXPECTED);
+				switch(next){
+					case EOF: reportError("Unterminated list", bracketHints(start));
+					case R_BRACKET:
+						returnValue(list);
+						return;
+					case COMMA: reportError("Redundant comma"); continue;
+				}
+				tokenizer.reset(next==ERROR);
+				call(VALUE_READ, new ExprFrame());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads elements of an operation, after the opening bracket.
+	 */
+	private final class OperFrame extends Frame{
+		static final int START = 0;
+		static final int VALUE_READ = 1;
+
+		private final AmongList list;
+		private int start;
+
+		OperFrame(@Nullable String name){
+			this.list = Among.namedList(name);
+			this.list.setOperation(true);
+		}
+
+		@Override void step(){
+			switch(state){
+				case START:
+					start = tokenizer.start();
+					break;
+				case VALUE_READ:
+					list.add(Objects.requireNonNull(returned));
+					tokenizer.discard();
+					switch(tokenizer.next(true, TokenizationMode.OPERATION)){
+						case COMMA: break;
+						case EOF: reportError("Unterminated operation", bracketHints(start));
+						case R_PAREN:
+							returnValue(list);
+							return;
+						default:
+							reportError("Each term should be separated with ','");
+							tokenizer.reset();
+					}
+					break;
+			}
+			while(true){
+				tokenizer.discard();
+				switch(tokenizer.next(true, TokenizationMode.OPERATION)){
+					case EOF: reportError("Unterminated operation", bracketHints(start));
+					case R_PAREN:
+						returnValue(list);
+						return;
+					case COMMA: reportError("Redundant comma"); continue;
+				}
+				tokenizer.reset();
+				call(VALUE_READ, new OperationFrame(importDefinition.operators(), 0));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads an operation with precedence climbing. Each priority group of {@link OperatorRegistry#priorityGroup()}
+	 * is a level, with operators of lower priority (the ones read first) at lower levels. Operators below {@code
+	 * minLevel} are left for the caller to read.
+	 */
+	private final class OperationFrame extends Frame{
+		static final int START = 0;
+		static final int OPERAND_READ = 1;
+		static final int PREFIX_OPERAND_READ = 2;
+		static final int RIGHT_OPERAND_READ = 3;
+		static final int RIGHT_ASSOCIATIVE_OPERAND_READ = 4;
+
+		private final OperatorRegistry operators;
+		private final int minLevel;
+
+		@Nullable private Among a;
+		// operators at or above this level are bound tighter than the ones read so far, so they belong to operands
+		private int maxLevel;
+		@Nullable private OperatorDefinition op;
+		private int level;
+		private int start;
+
+		OperationFrame(OperatorRegistry operators, int minLevel){
+			this.operators = operators;
+			this.minLevel = minLevel;
+		}
+
+		@Override void step(){
+			switch(state){
+				case START:{
+					tokenizer.discard();
+					tokenizer.next(true, TokenizationMode.OPERATION);
+					OperatorRegistry.Precedence p = precedence(operators);
+					if(p!=null&&p.leading()!=null&&p.leadingLevel()>=minLevel){
+						start = tokenizer.start();
+						op = p.leading();
+						level = p.leadingLevel();
+						call(PREFIX_OPERAND_READ, new OperationFrame(operators, level));
+					}else{
+						tokenizer.reset();
+						call(OPERAND_READ, new OperandFrame());
+					}
+					return;
+				}
+				case OPERAND_READ:
+					a = returned;
+					maxLevel = Integer.MAX_VALUE;
+					break;
+				case PREFIX_OPERAND_READ:{
+					AmongList list = Among.namedList(Objects.requireNonNull(op).aliasOrName(), returned);
+					list.setOperation(true);
+					a = operationMacro(list, start);
+					maxLevel = level;
+					break;
+				}
+				case RIGHT_ASSOCIATIVE_OPERAND_READ:{
+					AmongList list = Among.namedList(Objects.requireNonNull(op).aliasOrName(), a, returned);
+					list.setOperation(true);
+					a = operationMacro(list, start);
+					maxLevel = level;
+					break;
+				}
+				case RIGHT_OPERAND_READ:{
+					Among a = Objects.requireNonNull(this.a), b = Objects.requireNonNull(returned);
+					OperatorDefinition op = Objects.requireNonNull(this.op);
+					if(op.hasProperty(OperatorProperty.ACCESSOR)){
+						if(b.isPrimitive()){
+							this.a = accessMacro(Among.namedList(op.aliasOrName()+b.asPrimitive().getValue(), a), start);
+						}else{
+							AmongNameable b2 = b.asNameable().copy();
+							b2.setName("");
+							AmongList call = Among.namedList(op.aliasOrName()+b.asNameable().getName(), a, b2);
+							this.a = b.isObj() ? objectFnMacro(call, start) :
+									b.asList().isOperation() ? operationFnMacro(call, start) :
+											listFnMacro(call, start);
+						}
+					}else{
+						AmongList list = Among.namedList(op.aliasOrName(), a, b);
+						list.setOperation(true);
+						this.a = operationMacro(list, start);
+					}
+					maxLevel = level+1;
+					break;
+				}
+			}
+			while(true){
+				tokenizer.discard();
+				tokenizer.next(true, TokenizationMode.OPERATION);
+				OperatorRegistry.Precedence p = precedence(operators);
+				if(p==null||p.trailing()==null||p.trailingLevel()<minLevel||p.trailingLevel()>=maxLevel){
+					tokenizer.reset();
+					returnValue(a);
+					return;
+				}
+				start = tokenizer.start();
+				op = p.trailing();
+				level = p.trailingLevel();
+				if(op.type()==OperatorType.POSTFIX){
+					AmongList list = Among.namedList(op.aliasOrName(), a);
+					list.setOperation(true);
+					a = operationMacro(list, start);
+					maxLevel = level+1;
+				}else if(p.isRightAssociative()){
+					call(RIGHT_ASSOCIATIVE_OPERAND_READ, new OperationFrame(operators, level));
+					return;
+				}else{
+					call(RIGHT_OPERAND_READ, new OperationFrame(operators, level+1));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an operand of an operation; reports error and returns placeholder value if there isn't one.
+	 */
+	private final class OperandFrame extends Frame{
+		static final int START = 0;
+		static final int NAMEABLE_READ = 1;
+		static final int RECOVERED = 2;
+
+		@Override void step(){
+			switch(state){
+				case START:
+					tokenizer.discard();
+					call(NAMEABLE_READ, new NameableFrame(true));
+					return;
+				case NAMEABLE_READ:
+					if(returned!=null){
+						returnValue(returned);
+						return;
+					}
+					if(tokenizer.isLiteral()){ // literal left by lookahead
+						returnValue(primitive());
+						return;
+					}
+					tokenizer.reset();
+					tokenizer.next(true, TokenizationMode.OPERATION);
+					reportError("Expected value");
+					tokenizer.reset();
+					call(RECOVERED, new RecoverFrame(TokenizationMode.UNEXPECTED, R_PAREN, true, true));
+					return;
+				case RECOVERED:
+					if(returnedFlag) tokenizer.reset();
+					returnValue(Among.value("ERROR"));
+					return;
+				default: throw new IllegalStateException("Unreachable");
+			}
+		}
+	}
+
+	/**
+	 * Throws away tokens until a closure, comma or line break is found. Objects, lists and operations are read and
+	 * thrown away as a whole, so brackets inside them are not mistaken as closure. Returns whether the closure is
+	 * found.
+	 *
+	 * @see AmongParser#tryToRecover(TokenizationMode, TokenType, boolean, boolean)
+	 */
+	private final class RecoverFrame extends Frame{
+		static final int START = 0;
+		static final int NAMEABLE_READ = 1;
+
+		private final TokenizationMode mode;
+		@Nullable private final TokenType closure;
+		private final boolean returnOnComma;
+		private final boolean returnOnLineBreak;
+		private boolean prevRecovering;
+
+		RecoverFrame(TokenizationMode mode, @Nullable TokenType closure, boolean returnOnComma, boolean returnOnLineBreak){
+			this.mode = mode;
+			this.closure = closure;
+			this.returnOnComma = returnOnComma;
+			this.returnOnLineBreak = returnOnLineBreak;
+		}
+
+		@Override void step(){
+			if(state==START){
+				prevRecovering = recovering;
+				recovering = true;
+			}
+			while(true){
+				tokenizer.discard();
+				TokenType t = tokenizer.next(false, mode);
+				switch(t){
+					case BR: if(!returnOnLineBreak) continue;
+					case EOF: // continue from here (well, there might not be much to do if it's EOF lmao)
+						recovering = prevRecovering;
+						returnFlag(false);
+						return;
+					case COMMA:
+						if(!returnOnComma) continue;
+						recovering = prevRecovering;
+						returnFlag(false);
+						return;
+					case L_BRACE: case L_BRACKET: case L_PAREN:{
+						StructuralIndex index = structuralIndex();
+						int closingBracket = index!=null ? index.closingBracket(tokenizer.start()) : -1;
+						if(closingBracket>=0){ // jump over the object without reading it
+							tokenizer.skipTo(closingBracket+1);
+							continue;
+						}
+						tokenizer.reset();
+						call(NAMEABLE_READ, new NameableFrame(false)); // read object and throw it away
+						return;
+					}
+					default:
+						if(t==closure){
+							recovering = prevRecovering;
+							returnFlag(true);
+							return;
+						}
 				}
 			}
 		}
@@ -1025,6 +1535,58 @@ public final class AmongParser{
 		}
 	}
 
+	/**
+	 * State of incremental compilation. Once the parser arrives at a statement of the previous compilation placed after
+	 * the edit, with the same tokenizer state, the rest of the statements are identical to the previous compilation.
+	 */
+	private static final class Resync{
+		private final StatementIndex previous;
+		private final int editEnd;
+		private final int delta;
+
+		private int statement = -1;
+		private boolean failed;
+
+		private Resync(StatementIndex previous, int editEnd, int delta){
+			this.previous = previous;
+			this.editEnd = editEnd;
+			this.delta = delta;
+		}
+
+		boolean matches(int start, boolean buffered){
+			int oldStart = start-delta;
+			if(oldStart<=editEnd) return false;
+			int i = previous.statementAt(oldStart);
+			if(i<0||previous.isBuffered(i)!=buffered) return false;
+			statement = i;
+			return true;
+		}
+	}
+
+	/**
+	 * Thrown by {@link AmongParser#report(ReportType, String, int, Throwable, String...) report()} to stop the
+	 * compilation once {@link AmongEngine#maxErrors} is reached.
+	 */
+	private static final class ErrorLimitException extends RuntimeException{
+		private ErrorLimitException(){
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Wrapper for exceptions thrown by {@link AmongParser#objectConsumer}, to tell them apart from errors of the
+	 * parser itself.
+	 */
+	private static final class ConsumerException extends RuntimeException{
+		private ConsumerException(RuntimeException cause){
+			super(cause);
+		}
+
+		@Override public synchronized RuntimeException getCause(){
+			return (RuntimeException)super.getCause();
+		}
+	}
+
 	private static final class Inference{
 		private final int index;
 		private byte type = TypeFlags.ANY;
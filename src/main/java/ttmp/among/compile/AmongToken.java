@@ -3,6 +3,7 @@ package ttmp.among.compile;
 import org.jetbrains.annotations.Nullable;
 import ttmp.among.exception.Sussy;
 import ttmp.among.definition.OperatorDefinition;
+import ttmp.among.util.NumberParser;
 
 import java.util.Objects;
 
@@ -12,7 +13,13 @@ import java.util.Objects;
 public final class AmongToken{
 	public final TokenType type;
 	public final int start;
-	public final @Nullable String literal;
+	/**
+	 * Source the literal is sliced from, or {@code null} if the literal is not a slice of the source.
+	 */
+	@Nullable private final Source source;
+	private final int literalStart;
+	private final int literalEnd;
+	@Nullable private String literal;
 
 	public AmongToken(TokenType type, int start){
 		this(type, start, null);
@@ -20,27 +27,53 @@ public final class AmongToken{
 	public AmongToken(TokenType type, int start, @Nullable String literal){
 		this.type = type;
 		this.start = start;
+		this.source = null;
+		this.literalStart = 0;
+		this.literalEnd = 0;
 		this.literal = literal;
 	}
+	/**
+	 * Creates a token with literal identical to portion of the source. The string is created on first access of the
+	 * literal.
+	 *
+	 * @param literalStart Starting position of the literal, inclusive
+	 * @param literalEnd   Ending position of the literal, exclusive
+	 */
+	AmongToken(TokenType type, int start, Source source, int literalStart, int literalEnd){
+		this.type = type;
+		this.start = start;
+		this.source = source;
+		this.literalStart = literalStart;
+		this.literalEnd = literalEnd;
+	}
 
 	public boolean isLiteral(){
-		return literal!=null;
+		return literal!=null||source!=null;
+	}
+
+	/**
+	 * @return Literal of this token, or {@code null} if this token has no literal
+	 */
+	@Nullable public String literal(){
+		if(literal==null&&source!=null) literal = source.substring(literalStart, literalEnd);
+		return literal;
 	}
 
 	public String expectLiteral(){
+		String literal = literal();
 		if(literal==null) throw new Sussy("Expected literal");
 		return literal;
 	}
 
 	public String keywordOrEmpty(){
-		return is(TokenType.PLAIN_WORD)&&literal!=null ? literal : "";
+		return is(TokenType.PLAIN_WORD)&&isLiteral() ? expectLiteral() : "";
 	}
 
 	public boolean is(TokenType type){
 		return this.type==type;
 	}
 	public boolean is(TokenType type, @Nullable String literal){
-		return is(type)&&Objects.equals(literal, this.literal);
+		return is(type)&&Objects.equals(literal, literal());
 	}
 
 	public boolean isSimpleLiteral(){
@@ -52,13 +85,9 @@ public final class AmongToken{
 	 *
 	 * @return Double value parsed from literal, or {@code NaN} if it failed
 	 */
-	public double asNumber(){ // TODO maybe I shouldn't just plug in java parseDouble() :P
-		if(!is(TokenType.VALUE)) return Double.NaN;
-		try{
-			return Double.parseDouble(expectLiteral());
-		}catch(NumberFormatException ex){
-			return Double.NaN;
-		}
+	public double asNumber(){
+		if(!is(TokenType.VALUE)&&!is(TokenType.NUMBER)) return Double.NaN;
+		return NumberParser.parseDouble(expectLiteral(), Double.NaN);
 	}
 
 	public boolean isOperatorOrKeyword(){
@@ -70,7 +99,7 @@ public final class AmongToken{
 	}
 
 	@Override public String toString(){
-		return type+":"+start+(literal!=null ? "("+literal+")" : "");
+		return type+":"+start+(isLiteral() ? "("+literal()+")" : "");
 	}
 
 	public enum TokenType{
@@ -1,19 +1,23 @@
 package ttmp.among.compile;
 
 import org.jetbrains.annotations.Nullable;
+import ttmp.among.AmongEngine;
 import ttmp.among.compile.AmongToken.TokenType;
 import ttmp.among.definition.OperatorRegistry.NameGroup;
+import ttmp.among.definition.OperatorTrie;
+import ttmp.among.exception.Sussy;
 import ttmp.among.util.ErrorHandling;
+import ttmp.among.util.NumberParser;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Objects;
 
 import static ttmp.among.compile.Source.EOF;
 
 /**
- * Object responsible for converting raw source strings into list of {@link AmongToken}s.<br>
+ * Object responsible for converting raw source strings into tokens. Tokens are read one by one with a cursor; {@link
+ * AmongToken} objects are only created on request.<br>
  * The tokenization process is mode dependant - same input might produce different result depending on the mode.
  * To compensate for the possible ambiguity of the compilation, a rudimentary 'setback' functionality is included,
  * which act as a kind of lookahead. (ok i know these ramblings sounded absolutely fucking terrible but its my child ok
@@ -23,19 +27,127 @@ import static ttmp.among.compile.Source.EOF;
  * @see TokenizationMode
  */
 public final class AmongTokenizer{
+	private static final TokenType[] TYPES = TokenType.values();
+
+	/*
+	 * Character classes of ASCII codepoints. Runs of characters without any of the classes that end a token are consumed
+	 * in bulk; backslashes, slashes and line breaks always drop to nextCodePoint(), as they might start an escape
+	 * sequence, a comment or a line continuation.
+	 */
+	private static final byte[] CLASS = new byte[128];
+	private static final int SPECIAL = 1; // \ / \r \n
+	private static final int WHITESPACE = 2; // space \t
+	private static final int SEPARATOR = 4; // , { }
+	private static final int BRACKET = 8; // [ ] ( )
+	private static final int COLON = 16;
+	private static final int EQ = 32;
+	private static final int DIGIT = 64;
+
+	private static final int WORD_STOP = SPECIAL|WHITESPACE|SEPARATOR|BRACKET;
+	private static final int PLAIN_WORD_STOP = WORD_STOP|COLON;
+	private static final int PARAM_NAME_STOP = WORD_STOP|EQ;
+	private static final int KEY_STOP = SPECIAL|WHITESPACE|SEPARATOR|COLON;
+	private static final int MACRO_NAME_STOP = SPECIAL|WHITESPACE|SEPARATOR|BRACKET|COLON;
+	private static final int VALUE_STOP = SPECIAL|WHITESPACE|SEPARATOR|BRACKET;
+	private static final int OPERATION_STOP = SPECIAL|WHITESPACE|SEPARATOR|BRACKET|COLON;
+
+	static{
+		for(char c : "\\/\r\n".toCharArray()) CLASS[c] |= SPECIAL;
+		for(char c : " \t".toCharArray()) CLASS[c] |= WHITESPACE;
+		for(char c : ",{}".toCharArray()) CLASS[c] |= SEPARATOR;
+		for(char c : "[]()".toCharArray()) CLASS[c] |= BRACKET;
+		CLASS[':'] |= COLON;
+		CLASS['='] |= EQ;
+		for(char c = '0'; c<='9'; c++) CLASS[c] |= DIGIT;
+	}
+
 	private final Source source;
 	private final AmongParser parser;
 
 	private int srcIndex;
 
-	private final List<AmongToken> tokens = new ArrayList<>();
+	/*
+	 * Tokens read are stored in parallel arrays used as a ring buffer; token of index i (from 0 to size) is placed at
+	 * slot(i), starting from head. Discarding tokens only moves the head, and slots of the discarded tokens are
+	 * overwritten when new tokens are added. Capacity of the arrays is always a power of 2.
+	 *
+	 * Literal of each token is either a slice of the source from literalStarts[i] to literalEnds[i], or a string in
+	 * literals[i]; slices are materialized into literals[i] on first access. Tokens without literal have
+	 * literalStarts[i] of -1 and literals[i] of null. NUMBER tokens have the value of the literal in numbers[i]; it is
+	 * NaN for all the other tokens.
+	 */
+	private byte[] types = new byte[16];
+	private int[] starts = new int[16];
+	private int[] literalStarts = new int[16];
+	private int[] literalEnds = new int[16];
+	private String[] literals = new String[16];
+	private double[] numbers = new double[16];
+	private int head;
+	private int mask = 15;
+	private int size;
+
 	private int tokenIndex;
 	private int lastSrcIndex;
 	private int lastTokensLeft;
 
+	private int markTokenIndex;
+	private int markSize;
+	private int markSrcIndex;
+	private int markCurrentIndex = -1;
+
+	/*
+	 * Current token, which is the last token returned from next(). Type and start are copied from the arrays so they
+	 * stay accessible after discard(); currentIndex is -1 if the token is not in the arrays anymore, or is EOF.
+	 */
+	@Nullable private TokenType currentType;
+	private int currentStart = -1;
+	private int currentIndex = -1;
+	private int currentLiteralStart = -1;
+	private int currentLiteralEnd;
+	@Nullable private String currentLiteral;
+	private double currentNumber = Double.NaN;
+
+	/*
+	 * Results of reading tokens since the last discard(), for reusing them when the same portion of the source is read
+	 * again with the same mode after reset(true). Reads that reported anything are not remembered, so the reports are
+	 * emitted again just like before.
+	 */
+	private final Memo memo = new Memo();
+	/*
+	 * Tries used for tokens in the memo; tokens read with OPERATION mode depend on them.
+	 */
+	@Nullable private OperatorTrie memoOperatorTrie, memoKeywordTrie;
+	private boolean reported;
+	private int reusedReads;
+	private int reusedCodePoints;
+
+	/*
+	 * Literals are read as a slice of the source, from literalStart to literalEnd. Once a character that differs from
+	 * the source (escape sequences, or ones placed after skipped comments and line continuations) is met, the literal
+	 * read so far is copied into literalBuffer and the rest of the characters are appended there.
+	 */
+	private int literalStart;
+	private int literalEnd;
+	private boolean literalBuffered;
+	private final StringBuilder literalBuffer = new StringBuilder();
+
+	/*
+	 * Literals are materialized through this pool if present, so repeated keys and values share one instance.
+	 */
+	@Nullable private final StringPool stringPool;
+
 	public AmongTokenizer(Source source, AmongParser parser){
+		this(source, parser, 0);
+	}
+	/**
+	 * @param start Position in the source to start tokenization from
+	 */
+	public AmongTokenizer(Source source, AmongParser parser, int start){
 		this.source = source;
 		this.parser = parser;
+		this.srcIndex = this.lastSrcIndex = start;
+		AmongEngine engine = parser.engine();
+		this.stringPool = engine.stringPoolSize>0 ? new StringPool(engine.stringPoolSize, engine.stringPoolMaxLength) : null;
 	}
 
 	public Source source(){
@@ -43,50 +155,222 @@ public final class AmongTokenizer{
 	}
 
 	/**
-	 * Advances to the next token. New token is read if necessary.
+	 * Advances to the next token, making it the current token. New token is read if necessary.
 	 *
 	 * @param skipLineBreak If {@code true}, line break tokens will be skipped.
 	 * @param mode          Mode for interpreting literal expressions.
-	 * @return The next token
+	 * @return Type of the next token
 	 */
-	public AmongToken next(boolean skipLineBreak, TokenizationMode mode){
+	public TokenType next(boolean skipLineBreak, TokenizationMode mode){
 		while(true){
-			AmongToken token = advance(mode);
-			if(!skipLineBreak||token.type!=TokenType.BR) return token;
+			TokenType type = advance(mode);
+			if(!skipLineBreak||type!=TokenType.BR) return type;
 		}
 	}
 
 	/**
-	 * @return Last token read and returned with {@link AmongTokenizer#next(boolean, TokenizationMode) next()},
-	 * or {@code null} if there isn't one (because either {@link AmongTokenizer#reset(boolean) reset()} was called or
-	 * nothing was read yet)
+	 * Advances token index; Returns EOF if it's already at the end.
 	 */
-	@Nullable public AmongToken lastToken(){
-		return lastToken;
+	private TokenType advance(TokenizationMode mode){
+		if(tokenIndex>=size){
+			read(mode);
+			if(tokenIndex>=size){
+				currentIndex = -1;
+				currentStart = srcIndex;
+				currentLiteralStart = -1;
+				currentLiteral = null;
+				currentNumber = Double.NaN;
+				return currentType = TokenType.EOF;
+			}
+		}
+		return current(tokenIndex++);
 	}
 
-	@Nullable private AmongToken lastToken;
+	private TokenType current(int index){
+		int i = slot(currentIndex = index);
+		currentStart = starts[i];
+		currentLiteralStart = literalStarts[i];
+		currentLiteralEnd = literalEnds[i];
+		currentLiteral = literals[i];
+		currentNumber = numbers[i];
+		return currentType = TYPES[types[i]];
+	}
 
 	/**
-	 * Advances token index; Returns EOF if it's already at the end.
+	 * @return Type of the current token, or {@code null} if there isn't one (because either {@link
+	 * AmongTokenizer#reset(boolean) reset()} was called or nothing was read yet)
 	 */
-	private AmongToken advance(TokenizationMode mode){
-		if(tokenIndex>=tokens.size()){
-			read(mode);
-			if(tokenIndex>=tokens.size())
-				return lastToken = new AmongToken(TokenType.EOF, srcIndex);
+	@Nullable public TokenType type(){
+		return currentType;
+	}
+
+	/**
+	 * @return Starting position of the current token, or {@code -1} if there isn't one
+	 */
+	public int start(){
+		return currentType!=null ? currentStart : -1;
+	}
+
+	/**
+	 * @return Index of the current token in the buffer, or {@code -1} if there isn't one. The index stays valid until
+	 * the token is discarded with {@link AmongTokenizer#discard()} or {@link AmongTokenizer#reset(boolean) reset(true)}.
+	 * @see AmongTokenizer#expectLiteral(int)
+	 */
+	public int index(){
+		return currentType!=null ? currentIndex : -1;
+	}
+
+	public boolean is(TokenType type){
+		return currentType==type;
+	}
+	public boolean is(TokenType type, @Nullable String literal){
+		return is(type)&&Objects.equals(literal, literal());
+	}
+
+	public boolean isLiteral(){
+		return currentType!=null&&(currentLiteral!=null||currentLiteralStart>=0);
+	}
+
+	public boolean isSimpleLiteral(){
+		return !is(TokenType.QUOTED_PRIMITIVE)&&isLiteral();
+	}
+
+	public boolean isOperatorOrKeyword(){
+		return is(TokenType.OPERATOR)||is(TokenType.KEYWORD);
+	}
+
+	/**
+	 * @return Literal of the current token
+	 * @throws Sussy If the current token doesn't have literal
+	 */
+	public String expectLiteral(){
+		String literal = literal();
+		if(literal==null) throw new Sussy("Expected literal");
+		return literal;
+	}
+
+	/**
+	 * @param index Index of the token in the buffer, obtained with {@link AmongTokenizer#index()}
+	 * @return Literal of the token
+	 * @throws Sussy If the token doesn't have literal
+	 */
+	public String expectLiteral(int index){
+		if(index<0||index>=size) throw new Sussy("Expected literal");
+		int i = slot(index);
+		String literal = literals[i];
+		if(literal!=null) return literal;
+		if(literalStarts[i]<0) throw new Sussy("Expected literal");
+		return literals[i] = substring(literalStarts[i], literalEnds[i]);
+	}
+
+	public String keywordOrEmpty(){
+		return is(TokenType.PLAIN_WORD)&&isLiteral() ? expectLiteral() : "";
+	}
+
+	/**
+	 * Returns numeric value of the current token. Value of {@link TokenType#NUMBER} tokens are parsed during
+	 * tokenization; literal of {@link TokenType#VALUE} tokens are parsed to double.
+	 *
+	 * @return Double value of the current token, or {@code NaN} if it failed
+	 */
+	public double asNumber(){
+		if(is(TokenType.NUMBER)) return currentNumber;
+		if(!is(TokenType.VALUE)) return Double.NaN;
+		return NumberParser.parseDouble(expectLiteral(), Double.NaN);
+	}
+
+	@Nullable private String literal(){
+		if(currentType==null) return null;
+		if(currentLiteral==null&&currentLiteralStart>=0){
+			currentLiteral = substring(currentLiteralStart, currentLiteralEnd);
+			if(currentIndex>=0) literals[slot(currentIndex)] = currentLiteral;
 		}
-		return lastToken = tokens.get(tokenIndex++);
+		return currentLiteral;
+	}
+
+	/**
+	 * Creates a token object of the current token. Tokens are not stored as objects; this method is provided for
+	 * diagnostics.
+	 *
+	 * @return Current token, or {@code null} if there isn't one (because either {@link AmongTokenizer#reset(boolean)
+	 * reset()} was called or nothing was read yet)
+	 */
+	@Nullable public AmongToken lastToken(){
+		if(currentType==null) return null;
+		return currentLiteral==null&&currentLiteralStart>=0 ?
+				new AmongToken(currentType, currentStart, source, currentLiteralStart, currentLiteralEnd) :
+				new AmongToken(currentType, currentStart, currentLiteral);
 	}
 
 	/**
-	 * Discards all tokens currently read at this point. Current point becomes starting index.
+	 * Discards all tokens currently read at this point. Current point becomes starting index; the source is notified
+	 * that the portion before it will not be read again.
 	 */
 	public void discard(){
-		if(tokenIndex>0) tokens.subList(0, tokenIndex).clear();
+		if(tokenIndex>0){
+			head = slot(tokenIndex);
+			size -= tokenIndex;
+			currentIndex = -1;
+		}
 		tokenIndex = 0;
 		lastSrcIndex = srcIndex;
-		lastTokensLeft = tokens.size();
+		lastTokensLeft = size;
+		memo.prune(srcIndex);
+		source.release(srcIndex);
+	}
+
+	/**
+	 * Discards all tokens read, including ones read ahead of the current index, and moves to {@code position}. Current
+	 * point becomes starting index, same as {@link AmongTokenizer#discard()}.
+	 *
+	 * @param position Position in the source to continue tokenization from
+	 */
+	public void skipTo(int position){
+		head = slot(size);
+		size = 0;
+		tokenIndex = 0;
+		currentIndex = -1;
+		srcIndex = lastSrcIndex = position;
+		lastTokensLeft = 0;
+		memo.prune(position);
+		source.release(position);
+	}
+
+	/**
+	 * Marks the current point, so the tokenizer can come back to it with {@link AmongTokenizer#rewind()} after
+	 * looking ahead.
+	 */
+	public void mark(){
+		markTokenIndex = tokenIndex;
+		markSize = size;
+		markSrcIndex = srcIndex;
+		markCurrentIndex = currentIndex;
+	}
+
+	/**
+	 * Returns to the point marked with {@link AmongTokenizer#mark()}, making the token current at that point current
+	 * again. Tokens read after the mark are dropped, so the source after the mark can be read with another mode; tokens
+	 * read before the mark, including ones read ahead of it, are retained. Unlike {@link AmongTokenizer#reset(boolean)
+	 * reset(true)}, tokens before the mark don't have to be read again.<br>
+	 * The mark is invalidated by {@link AmongTokenizer#discard()}, {@link AmongTokenizer#skipTo(int)} and {@link
+	 * AmongTokenizer#reset(boolean) reset(true)}.
+	 */
+	public void rewind(){
+		size = markSize;
+		srcIndex = markSrcIndex;
+		tokenIndex = markTokenIndex;
+		if(markCurrentIndex>=0) current(markCurrentIndex);
+		else{
+			currentType = null;
+			currentIndex = -1;
+		}
+	}
+
+	/**
+	 * @return Whether there are tokens read ahead of the current index
+	 */
+	public boolean hasBufferedToken(){
+		return tokenIndex<size;
 	}
 
 	/**
@@ -105,94 +389,190 @@ public final class AmongTokenizer{
 	 */
 	public void reset(boolean discardTokens){
 		if(discardTokens){
-			tokens.subList(lastTokensLeft, tokens.size()).clear();
+			size = lastTokensLeft;
 			srcIndex = lastSrcIndex;
 		}
 		tokenIndex = 0;
-		lastToken = null;
+		currentType = null;
+		currentIndex = -1;
+	}
+
+	private void add(TokenType type, int start){
+		add(type, start, -1, 0, null);
+	}
+	private void add(TokenType type, int start, String literal){
+		add(type, start, -1, 0, literal);
+	}
+	private void add(TokenType type, int start, int literalStart, int literalEnd, @Nullable String literal){
+		if(size>mask) grow();
+		int i = slot(size++);
+		types[i] = (byte)type.ordinal();
+		starts[i] = start;
+		literalStarts[i] = literalStart;
+		literalEnds[i] = literalEnd;
+		literals[i] = literal;
+		numbers[i] = Double.NaN;
+	}
+
+	private int slot(int index){
+		return (head+index)&mask;
+	}
+
+	private void grow(){
+		int capacity = (mask+1)*2;
+		types = copyTokens(types, new byte[capacity]);
+		starts = copyTokens(starts, new int[capacity]);
+		literalStarts = copyTokens(literalStarts, new int[capacity]);
+		literalEnds = copyTokens(literalEnds, new int[capacity]);
+		literals = copyTokens(literals, new String[capacity]);
+		numbers = copyTokens(numbers, new double[capacity]);
+		head = 0;
+		mask = capacity-1;
+	}
+
+	private <T> T copyTokens(T src, T dest){
+		copyTokens(src, 0, dest, 0, size);
+		return dest;
+	}
+
+	/**
+	 * Copies {@code count} elements of token array {@code src}, starting from token index {@code from}, into {@code
+	 * dest}.
+	 */
+	private void copyTokens(Object src, int from, Object dest, int destPos, int count){
+		int i = slot(from);
+		int firstPart = Math.min(count, mask+1-i);
+		System.arraycopy(src, i, dest, destPos, firstPart);
+		System.arraycopy(src, 0, dest, destPos+firstPart, count-firstPart);
+	}
+
+	/**
+	 * @return Number of reads served from previous result of reading the same position with the same mode, instead of
+	 * tokenizing the source again
+	 */
+	public int reusedReads(){
+		return reusedReads;
+	}
+	/**
+	 * @return Total number of codepoints skipped over by {@link AmongTokenizer#reusedReads() reused reads}
+	 */
+	public int reusedCodePoints(){
+		return reusedCodePoints;
 	}
 
 	private void read(TokenizationMode mode){
+		int start = srcIndex;
+		if(mode==TokenizationMode.OPERATION){
+			OperatorTrie operatorTrie = parser.importRoot().operators().operatorTrie();
+			OperatorTrie keywordTrie = parser.importRoot().operators().keywordTrie();
+			if(operatorTrie!=memoOperatorTrie||keywordTrie!=memoKeywordTrie){
+				memo.removeMode(TokenizationMode.OPERATION);
+				memoOperatorTrie = operatorTrie;
+				memoKeywordTrie = keywordTrie;
+			}
+		}
+		int entry = memo.find(start, mode);
+		if(entry>=0){
+			for(int i = memo.tokenStart(entry), end = memo.tokenStart(entry+1); i<end; i++){
+				add(TYPES[memo.types[i]], memo.starts[i], memo.literalStarts[i], memo.literalEnds[i], memo.literals[i]);
+				numbers[slot(size-1)] = memo.numbers[i];
+			}
+			srcIndex = memo.ends[entry];
+			reusedReads++;
+			reusedCodePoints += srcIndex-start;
+			return;
+		}
+		int from = size;
+		reported = false;
+		lex(mode);
+		if(!reported&&size>from) memo.add(start, mode, srcIndex, from);
+	}
+
+	private void lex(TokenizationMode mode){
 		while(true){
-			int idx = srcIndex;
+			int idx = srcIndex = scanWhile(srcIndex, WHITESPACE);
 			switch(nextCodePoint()){
 				case EOF: return;
 				case ' ': case '\t': continue;
 				case '\n':
-					tokens.add(new AmongToken(TokenType.BR, idx));
+					add(TokenType.BR, idx);
 					return;
 				case '(':
 					if(mode==TokenizationMode.KEY) break;
-					tokens.add(new AmongToken(TokenType.L_PAREN, idx));
+					add(TokenType.L_PAREN, idx);
 					return;
 				case ')':
 					if(mode==TokenizationMode.KEY) break;
-					tokens.add(new AmongToken(TokenType.R_PAREN, idx));
+					add(TokenType.R_PAREN, idx);
 					return;
 				case '{':
-					tokens.add(new AmongToken(TokenType.L_BRACE, idx));
+					add(TokenType.L_BRACE, idx);
 					return;
 				case '}':
-					tokens.add(new AmongToken(TokenType.R_BRACE, idx));
+					add(TokenType.R_BRACE, idx);
 					return;
 				case '[':
 					if(mode==TokenizationMode.KEY) break;
-					tokens.add(new AmongToken(TokenType.L_BRACKET, idx));
+					add(TokenType.L_BRACKET, idx);
 					return;
 				case ']':
 					if(mode==TokenizationMode.KEY) break;
-					tokens.add(new AmongToken(TokenType.R_BRACKET, idx));
+					add(TokenType.R_BRACKET, idx);
 					return;
 				case ':':
 					if(mode.emitsColon()){
-						tokens.add(new AmongToken(TokenType.COLON, idx));
+						add(TokenType.COLON, idx);
 						return;
 					}else break;
 				case ',':
-					tokens.add(new AmongToken(TokenType.COMMA, idx));
+					add(TokenType.COMMA, idx);
 					return;
 				case '\'':
-					tokens.add(new AmongToken(TokenType.QUOTED_PRIMITIVE, idx, primitive('\'')));
+					primitive(idx, '\'');
 					return;
 				case '"':
-					tokens.add(new AmongToken(TokenType.QUOTED_PRIMITIVE, idx, primitive('"')));
+					primitive(idx, '"');
 					return;
 				case '=':
 					if(mode==TokenizationMode.PARAM_NAME){
-						tokens.add(new AmongToken(TokenType.EQ, idx));
+						add(TokenType.EQ, idx);
 						return;
 					}
 			}
 			if(mode==TokenizationMode.UNEXPECTED){
-				tokens.add(new AmongToken(TokenType.ERROR, idx));
+				add(TokenType.ERROR, idx);
 				return;
 			}
 			srcIndex = idx;
 			switch(mode){
-				case PLAIN_WORD: tokens.add(word(true, false)); return;
-				case WORD: tokens.add(word(false, false)); return;
-				case KEY: tokens.add(multipleWords(true, false)); return;
-				case PARAM_NAME: tokens.add(word(false, true)); return;
-				case MACRO_NAME: tokens.add(multipleWords(false, true)); return;
-				case VALUE: tokens.add(multipleWords(false, false)); return;
+				case PLAIN_WORD: word(true, false); return;
+				case WORD: word(false, false); return;
+				case KEY: multipleWords(true, false); return;
+				case PARAM_NAME: word(false, true); return;
+				case MACRO_NAME: multipleWords(false, true); return;
+				case VALUE: multipleWords(false, false); return;
 				case OPERATION: operation(); return;
 			}
 		}
 	}
 
-	private String primitive(int closure){
-		StringBuilder stb = new StringBuilder();
+	private void primitive(int start, int closure){
+		beginLiteral(srcIndex);
 		while(true){
+			// copy runs of text without escapes, line breaks or the closure at once
+			appendLiteralRange(source.indexOf(srcIndex, closure, '\\', '\n'));
+			int from = srcIndex;
 			int c = nextCodePoint(true);
 			switch(c){
 				case EOF:
-					parser.reportError("Unterminated primitive", srcIndex);
-					return stb.toString();
+					reportError("Unterminated primitive", srcIndex);
+					addLiteral(TokenType.QUOTED_PRIMITIVE, start);
+					return;
 				case '\\':
-					stb.appendCodePoint(backslash());
+					appendLiteral(backslash(), from, true);
 					break;
 				case '\n':{
-					stb.append('\n');
+					appendLiteral('\n', from, false);
 					int prev = srcIndex;
 					L2:
 					while(true){ // search for |
@@ -208,25 +588,30 @@ public final class AmongTokenizer{
 					break;
 				}
 				default:
-					if(c==closure) return stb.toString();
-					else stb.appendCodePoint(c);
+					if(c==closure){
+						addLiteral(TokenType.QUOTED_PRIMITIVE, start);
+						return;
+					}
+					else appendLiteral(c, from, false);
 			}
 		}
 	}
 
-	private AmongToken word(boolean plain, boolean paramName){
+	private void word(boolean plain, boolean paramName){
 		boolean isPlain = plain;
-		StringBuilder stb = new StringBuilder();
 		int start = srcIndex;
+		beginLiteral(start);
 		int prev;
+		int stop = paramName ? PARAM_NAME_STOP : plain ? PLAIN_WORD_STOP : WORD_STOP;
 		L:
 		while(true){
+			appendLiteralRange(scanUntil(srcIndex, stop));
 			prev = srcIndex;
 			int c = nextCodePoint();
 			switch(c){
 				case '\\':
 					isPlain = false;
-					stb.appendCodePoint(backslash());
+					appendLiteral(backslash(), prev, true);
 					continue;
 				case '=':
 					if(paramName) break L;
@@ -238,21 +623,24 @@ public final class AmongTokenizer{
 				case '{': case '}': case '[': case ']': case '(': case ')':
 					break L;
 			}
-			stb.appendCodePoint(c);
+			appendLiteral(c, prev, false);
 		}
 		srcIndex = prev;
-		return new AmongToken(
-				paramName ? TokenType.PARAM_NAME : isPlain ? TokenType.PLAIN_WORD : TokenType.WORD,
-				start, stb.toString());
+		addLiteral(paramName ? TokenType.PARAM_NAME : isPlain ? TokenType.PLAIN_WORD : TokenType.WORD, start);
 	}
 
-	private AmongToken multipleWords(boolean key, boolean macroName){
-		StringBuilder stb = new StringBuilder();
+	private void multipleWords(boolean key, boolean macroName){
 		int start = srcIndex;
+		beginLiteral(start);
 		int lastNonWhitespaceSeen = srcIndex;
+		int stop = key ? KEY_STOP : macroName ? MACRO_NAME_STOP : VALUE_STOP;
 		int prev;
 		L:
 		while(true){
+			if(srcIndex==lastNonWhitespaceSeen){
+				appendLiteralRange(scanUntil(srcIndex, stop));
+				lastNonWhitespaceSeen = srcIndex;
+			}
 			prev = srcIndex;
 			switch(nextCodePoint()){
 				case ' ': case '\t': continue;
@@ -265,20 +653,20 @@ public final class AmongTokenizer{
 					break L;
 			}
 			srcIndex = lastNonWhitespaceSeen;
-			while(srcIndex<=prev) stb.appendCodePoint(nextLiteralChar());
+			while(srcIndex<=prev) appendLiteralChar();
 			lastNonWhitespaceSeen = srcIndex;
 		}
 		srcIndex = prev;
-		return new AmongToken(
-				key ? TokenType.KEY : macroName ? TokenType.MACRO_NAME : TokenType.VALUE,
-				start, stb.toString());
+		addLiteral(key ? TokenType.KEY : macroName ? TokenType.MACRO_NAME : TokenType.VALUE, start);
 	}
 
 	private void operation(){
 		int start = srcIndex;
 		NameGroup keyword = match(true);
-		StringBuilder stb = new StringBuilder();
+		beginLiteral(start);
+		OperatorTrie operators = parser.importRoot().operators().operatorTrie();
 		while(true){
+			if(keyword==null&&srcIndex>start) appendLiteralRange(scanOperand(srcIndex, operators));
 			int prev = srcIndex;
 			int c = nextCodePoint();
 			switch(c){
@@ -286,14 +674,14 @@ public final class AmongTokenizer{
 				case '{': case '}': case '[': case ']': case '(': case ')':
 					srcIndex = prev;
 				case EOF:
-					addOperationTokens(keyword, start, stb);
+					addOperationTokens(keyword, start);
 					return;
 			}
 			srcIndex = prev;
 			NameGroup operator = match(false);
 			if(operator!=null){
-				addOperationTokens(keyword, start, stb);
-				tokens.add(new AmongToken(TokenType.OPERATOR, prev, operator.name()));
+				addOperationTokens(keyword, start);
+				add(TokenType.OPERATOR, prev, operator.name());
 				return;
 			}
 			if(keyword!=null){
@@ -302,26 +690,48 @@ public final class AmongTokenizer{
 			}else if(prev==start){ // first character
 				if(number()) return;
 			}
-			stb.appendCodePoint(nextLiteralChar());
+			appendLiteralChar();
 		}
 	}
 
-	private void addOperationTokens(@Nullable NameGroup keyword, int start,
-	                                StringBuilder stb){
-		if(keyword!=null) tokens.add(new AmongToken(TokenType.KEYWORD, start, keyword.name()));
-		else if(stb.length()>0) tokens.add(new AmongToken(TokenType.WORD, start, stb.toString()));
+	private void addOperationTokens(@Nullable NameGroup keyword, int start){
+		if(keyword!=null) add(TokenType.KEYWORD, start, keyword.name());
+		else if(literalBuffered ? literalBuffer.length()>0 : literalEnd>literalStart)
+			addLiteral(TokenType.WORD, start);
 	}
 
+	/**
+	 * Matches the longest operator or keyword starting at current position. Position is moved to the end of the match,
+	 * or left untouched if nothing matched.
+	 */
 	@Nullable private NameGroup match(boolean keyword){
+		OperatorTrie trie = keyword ?
+				parser.importRoot().operators().keywordTrie() :
+				parser.importRoot().operators().operatorTrie();
+		if(trie.isEmpty()) return null;
 		int prev = srcIndex;
-		Set<NameGroup> set = keyword ?
-				parser.importRoot().operators().getKeywords(nextLiteralChar()) :
-				parser.importRoot().operators().getOperators(nextLiteralChar());
-		srcIndex = prev;
-		if(!set.isEmpty())
-			for(NameGroup o : set)
-				if(matches(o)) return o;
-		return null;
+		NameGroup match = null;
+		int matchEnd = prev;
+		for(int node = OperatorTrie.ROOT; ; ){
+			node = trie.next(node, nextLiteralChar());
+			if(node==OperatorTrie.NO_NODE) break;
+			NameGroup accept = trie.accept(node);
+			if(accept!=null){
+				match = accept;
+				matchEnd = srcIndex;
+			}
+		}
+		srcIndex = match!=null ? matchEnd : prev;
+		return match;
+	}
+
+	private void reportError(String message, int srcIndex){
+		reported = true;
+		parser.reportError(message, srcIndex);
+	}
+	private void report(ReportType type, String message, int srcIndex){
+		reported = true;
+		parser.report(type, message, srcIndex);
 	}
 
 	private boolean number(){
@@ -342,6 +752,7 @@ public final class AmongTokenizer{
 		}
 		srcIndex = numberStart;
 		while(true){
+			srcIndex = scanWhile(srcIndex, DIGIT);
 			int prev = srcIndex;
 			int c = nextCodePoint();
 			switch(c){
@@ -357,6 +768,7 @@ public final class AmongTokenizer{
 				case '.':{
 					boolean first = true;
 					while(true){
+						if(!first) srcIndex = scanWhile(srcIndex, DIGIT);
 						int prev2 = srcIndex;
 						c = nextCodePoint();
 						switch(c){
@@ -379,7 +791,7 @@ public final class AmongTokenizer{
 									NameGroup operator = match(false);
 									if(operator!=null){
 										addNumber(numberStart, prev2);
-										tokens.add(new AmongToken(TokenType.OPERATOR, prev2, operator.name()));
+										add(TokenType.OPERATOR, prev2, operator.name());
 										return true;
 									}
 								}
@@ -392,7 +804,7 @@ public final class AmongTokenizer{
 					NameGroup operator = match(false);
 					if(operator!=null){
 						addNumber(numberStart, prev);
-						tokens.add(new AmongToken(TokenType.OPERATOR, prev, operator.name()));
+						add(TokenType.OPERATOR, prev, operator.name());
 						return true;
 					}else{
 						srcIndex = start;
@@ -405,22 +817,140 @@ public final class AmongTokenizer{
 	private void addNumber(int numberStartInclusive, int numberEndExclusive){
 		int cache = srcIndex;
 		srcIndex = numberStartInclusive;
-		StringBuilder stb = new StringBuilder();
-		while(srcIndex<numberEndExclusive)
-			stb.appendCodePoint(nextLiteralChar());
-		tokens.add(new AmongToken(TokenType.NUMBER, numberStartInclusive, stb.toString()));
+		beginLiteral(numberStartInclusive);
+		while(true){
+			appendLiteralRange(Math.min(numberEndExclusive, scanUntil(srcIndex, SPECIAL)));
+			if(srcIndex>=numberEndExclusive) break;
+			appendLiteralChar();
+		}
+		addLiteral(TokenType.NUMBER, numberStartInclusive);
+		numbers[slot(size-1)] = literalNumber();
 		srcIndex = cache;
 	}
 
-	private boolean matches(NameGroup operator){
-		int prev = srcIndex;
-		for(int i = 0; i<operator.codePointLength(); i++){
-			if(operator.codePointAt(i)!=nextLiteralChar()){
-				srcIndex = prev;
-				return false;
+	/**
+	 * Parses the literal read as a number. The literal is expected to be a valid decimal number without exponent, e.g.
+	 * {@code -12.5}.
+	 */
+	private double literalNumber(){
+		int length = literalBuffered ? literalBuffer.length() : literalEnd-literalStart;
+		long significand = 0;
+		int digits = 0, exponent = 0;
+		boolean negative = false, fraction = false;
+		for(int i = 0; i<length; i++){
+			int c = literalBuffered ? literalBuffer.charAt(i) : source.codePointAt(literalStart+i);
+			if(c=='-') negative = true;
+			else if(c=='.') fraction = true;
+			else if(digits>0||c!='0'){
+				if(++digits>19) // doesn't fit in long; let the parser handle it
+					return NumberParser.parseDouble(literalBuffered ? literalBuffer : source.substring(literalStart, literalEnd), Double.NaN);
+				significand = significand*10+(c-'0');
+				if(fraction) exponent--;
+			}else if(fraction) exponent--;
+		}
+		return NumberParser.toDouble(significand, exponent, negative);
+	}
+
+	/**
+	 * @return First position from {@code position} with a codepoint not having any of the {@code classes}
+	 */
+	private int scanWhile(int position, int classes){
+		while(true){
+			int c = source.codePointAt(position);
+			if(c<0||c>=128||(CLASS[c]&classes)==0) return position;
+			position++;
+		}
+	}
+
+	/**
+	 * @return First position from {@code position} with a codepoint having any of the {@code classes}, or one that is not
+	 * ASCII
+	 */
+	private int scanUntil(int position, int classes){
+		while(true){
+			int c = source.codePointAt(position);
+			if(c<0||c>=128||(CLASS[c]&classes)!=0) return position;
+			position++;
+		}
+	}
+
+	/**
+	 * Same as {@link AmongTokenizer#scanUntil(int, int) scanUntil(position, OPERATION_STOP)}, but also stops at
+	 * codepoints that can start an operator.
+	 */
+	private int scanOperand(int position, OperatorTrie operators){
+		while(true){
+			int c = source.codePointAt(position);
+			if(c<0||c>=128||(CLASS[c]&OPERATION_STOP)!=0||operators.next(OperatorTrie.ROOT, c)!=OperatorTrie.NO_NODE)
+				return position;
+			position++;
+		}
+	}
+
+	private void beginLiteral(int start){
+		literalStart = literalEnd = start;
+		literalBuffered = false;
+	}
+
+	/**
+	 * Appends a codepoint to the literal.
+	 *
+	 * @param codePoint Codepoint to append
+	 * @param from      Source position the codepoint was read from; the current position is the end
+	 * @param escaped   Whether the codepoint was produced from an escape sequence
+	 */
+	private void appendLiteral(int codePoint, int from, boolean escaped){
+		if(!literalBuffered){
+			if(!escaped&&from==literalEnd&&srcIndex==from+1){
+				literalEnd = srcIndex;
+				return;
 			}
+			bufferLiteral();
 		}
-		return true;
+		literalBuffer.appendCodePoint(codePoint);
+	}
+
+	/**
+	 * Appends codepoints from current position to {@code end} to the literal, as they are in the source.
+	 */
+	private void appendLiteralRange(int end){
+		if(end<=srcIndex) return;
+		if(!literalBuffered){
+			if(srcIndex==literalEnd){
+				literalEnd = srcIndex = end;
+				return;
+			}
+			bufferLiteral();
+		}
+		literalBuffer.append(source.substring(srcIndex, end));
+		srcIndex = end;
+	}
+
+	private String substring(int start, int end){
+		return stringPool!=null ? stringPool.intern(source, start, end) : source.substring(start, end);
+	}
+
+	private void bufferLiteral(){
+		literalBuffered = true;
+		literalBuffer.setLength(0);
+		if(literalEnd>literalStart) literalBuffer.append(source.substring(literalStart, literalEnd));
+	}
+
+	private void appendLiteralChar(){
+		int from = srcIndex;
+		int c = nextCodePoint();
+		if(c=='\\') appendLiteral(backslash(), from, true);
+		else appendLiteral(c, from, false);
+	}
+
+	/**
+	 * Adds token with the literal read. The literal is not copied unless it differs from the source.
+	 */
+	private void addLiteral(TokenType type, int start){
+		if(literalBuffered) add(type, start, stringPool!=null ? stringPool.intern(literalBuffer) : literalBuffer.toString());
+		// text of windowed sources might be gone by the time literal is accessed
+		else if(source.isWindowed()) add(type, start, substring(literalStart, literalEnd));
+		else add(type, start, literalStart, literalEnd, null);
 	}
 
 	private int nextCodePoint(){
@@ -456,9 +986,14 @@ public final class AmongTokenizer{
 		}
 	}
 
+	/*
+	 * Comments skip to the next codepoint of interest directly. Sources normalize line breaks, so there's no need to
+	 * search for \r.
+	 */
 	private void lineComment(){
 		while(true){
-			switch(source.codePointAt(++srcIndex)){
+			srcIndex = source.indexOf(srcIndex+1, '\n', '\\', '\\');
+			switch(source.codePointAt(srcIndex)){
 				case '\r': case '\n': case EOF: return;
 				case '\\': switch(source.codePointAt(++srcIndex)){
 					case '\r': if(source.codePointAt(++srcIndex)!='\n') srcIndex--;
@@ -469,18 +1004,9 @@ public final class AmongTokenizer{
 	}
 
 	private void blockComment(){
-		while(true){
-			switch(source.codePointAt(++srcIndex)){
-				case '*':
-					if(source.codePointAt(srcIndex+1)=='/'){
-						srcIndex += 2;
-						return;
-					}
-				case EOF:
-					parser.reportError("Unterminated block comment", srcIndex);
-					return;
-			}
-		}
+		srcIndex = source.indexOf(srcIndex+1, '*', '*', '*');
+		if(source.codePointAt(srcIndex)=='*'&&source.codePointAt(srcIndex+1)=='/') srcIndex += 2;
+		else reportError("Unterminated block comment", srcIndex);
 	}
 
 	private int nextLiteralChar(){
@@ -511,7 +1037,7 @@ public final class AmongTokenizer{
 			switch(c){
 				case EOF:
 					if(parser.engine().invalidUnicodeHandling!=ErrorHandling.IGNORE)
-						parser.report(parser.engine().invalidUnicodeHandling==ErrorHandling.WARN ?
+						report(parser.engine().invalidUnicodeHandling==ErrorHandling.WARN ?
 										ReportType.WARN : ReportType.ERROR,
 								"Incomplete unicode escape", start+i);
 					return source.codePointAt(start-1);
@@ -538,7 +1064,7 @@ public final class AmongTokenizer{
 						String message = new StringBuilder().append("Invalid character '")
 								.appendCodePoint(c)
 								.append("' for unicode escape").toString();
-						parser.report(type, message, start+i);
+						report(type, message, start+i);
 					}
 					return source.codePointAt(start-1);
 			}
@@ -546,7 +1072,7 @@ public final class AmongTokenizer{
 		}
 		if(codePoint>0x10FFFF||codePoint<0){
 			if(parser.engine().invalidUnicodeHandling!=ErrorHandling.IGNORE)
-				parser.report(parser.engine().invalidUnicodeHandling==ErrorHandling.WARN ?
+				report(parser.engine().invalidUnicodeHandling==ErrorHandling.WARN ?
 								ReportType.WARN : ReportType.ERROR,
 						"Provided value '"+Integer.toHexString(codePoint).toUpperCase(Locale.ROOT)+
 								"' is outside the unicode range (0 ~ 10FFFF)",
@@ -556,4 +1082,105 @@ public final class AmongTokenizer{
 		srcIndex += digits;
 		return codePoint;
 	}
+
+	/**
+	 * Tokens read from each position and mode. Tokens of entry {@code i} are stored in the arrays from {@code
+	 * tokenStarts[i]} to {@code tokenStarts[i+1]}.
+	 */
+	private final class Memo{
+		private int[] positions = new int[8];
+		private byte[] modes = new byte[8];
+		private int[] ends = new int[8];
+		private int[] tokenStarts = new int[9];
+		private int entries;
+
+		private byte[] types = new byte[8];
+		private int[] starts = new int[8];
+		private int[] literalStarts = new int[8];
+		private int[] literalEnds = new int[8];
+		private String[] literals = new String[8];
+		private double[] numbers = new double[8];
+
+		int find(int position, TokenizationMode mode){
+			for(int i = 0; i<entries; i++)
+				if(positions[i]==position&&modes[i]==mode.ordinal()) return i;
+			return -1;
+		}
+
+		int tokenStart(int entry){
+			return tokenStarts[entry];
+		}
+
+		/**
+		 * Remembers tokens from {@code from} to the end of the token buffer, read from {@code position} with {@code
+		 * mode}.
+		 */
+		void add(int position, TokenizationMode mode, int end, int from){
+			if(entries+1==positions.length){
+				int capacity = positions.length*2;
+				positions = Arrays.copyOf(positions, capacity);
+				modes = Arrays.copyOf(modes, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				tokenStarts = Arrays.copyOf(tokenStarts, capacity+1);
+			}
+			int tokenStart = tokenStarts[entries];
+			int count = size-from;
+			if(tokenStart+count>types.length){
+				int capacity = Math.max(types.length*2, tokenStart+count);
+				types = Arrays.copyOf(types, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				literalStarts = Arrays.copyOf(literalStarts, capacity);
+				literalEnds = Arrays.copyOf(literalEnds, capacity);
+				literals = Arrays.copyOf(literals, capacity);
+				numbers = Arrays.copyOf(numbers, capacity);
+			}
+			copyTokens(AmongTokenizer.this.types, from, types, tokenStart, count);
+			copyTokens(AmongTokenizer.this.starts, from, starts, tokenStart, count);
+			copyTokens(AmongTokenizer.this.literalStarts, from, literalStarts, tokenStart, count);
+			copyTokens(AmongTokenizer.this.literalEnds, from, literalEnds, tokenStart, count);
+			copyTokens(AmongTokenizer.this.literals, from, literals, tokenStart, count);
+			copyTokens(AmongTokenizer.this.numbers, from, numbers, tokenStart, count);
+			positions[entries] = position;
+			modes[entries] = (byte)mode.ordinal();
+			ends[entries] = end;
+			tokenStarts[++entries] = tokenStart+count;
+		}
+
+		/**
+		 * Removes entries read from before {@code position}, as they can't be read again.
+		 */
+		void prune(int position){
+			retain(position, null);
+		}
+
+		void removeMode(TokenizationMode mode){
+			retain(0, mode);
+		}
+
+		private void retain(int minPosition, @Nullable TokenizationMode excludedMode){
+			int e = 0, t = 0;
+			for(int i = 0; i<entries; i++){
+				if(positions[i]<minPosition||excludedMode!=null&&modes[i]==excludedMode.ordinal()) continue;
+				int from = tokenStarts[i], count = tokenStarts[i+1]-from;
+				if(e!=i){
+					positions[e] = positions[i];
+					modes[e] = modes[i];
+					ends[e] = ends[i];
+					System.arraycopy(types, from, types, t, count);
+					System.arraycopy(starts, from, starts, t, count);
+					System.arraycopy(literalStarts, from, literalStarts, t, count);
+					System.arraycopy(literalEnds, from, literalEnds, t, count);
+					System.arraycopy(literals, from, literals, t, count);
+					System.arraycopy(numbers, from, numbers, t, count);
+				}
+				tokenStarts[e] = t;
+				t += count;
+				e++;
+			}
+			if(e==entries) return;
+			Arrays.fill(literals, t, tokenStarts[entries], null);
+			entries = e;
+			tokenStarts[e] = t;
+		}
+	}
 }
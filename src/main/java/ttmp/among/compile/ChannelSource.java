@@ -0,0 +1,242 @@
+package ttmp.among.compile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Source decoded from a channel on demand. Only a window of the source is kept in memory; portion of the source
+ * before the position released with {@link ChannelSource#release(int)} is dropped as the window moves forward.<br>
+ * Only line starts of the lines in the window are retained, with the number of lines before them, so line and column
+ * can be resolved for positions in the window; neither text nor line starts of the released portion can be accessed
+ * anymore. Reports record line and column of their positions for this reason. The length and number of lines of the source are unknown until the
+ * input is exhausted; querying either of them before that reads the rest of the input into the window.
+ */
+final class ChannelSource extends Source{
+	private static final int BUFFER_SIZE = 8192;
+
+	private final ReadableByteChannel channel;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+	private final CharBuffer out = CharBuffer.allocate(BUFFER_SIZE);
+	private boolean eof;
+
+	/**
+	 * Codepoints from {@code windowStart} to {@code windowEnd}.
+	 */
+	private int[] window = new int[BUFFER_SIZE];
+	private int windowStart;
+	private int windowEnd;
+	/**
+	 * Codepoints before this position can be dropped from the window.
+	 */
+	private int releasePoint;
+
+	/**
+	 * Starts of the lines from {@code lineBase} to {@code lines}; {@code lineStarts[0]} is the start of line {@code
+	 * lineBase}, which is the line containing {@code windowStart}.
+	 */
+	private int[] lineStarts = new int[16];
+	private int lineBase;
+	private int lines = 1;
+
+	private boolean pendingLineBreak;
+	private boolean lastIsCarriageReturn;
+	private char pendingHighSurrogate;
+
+	ChannelSource(ReadableByteChannel channel, Charset charset){
+		super(false);
+		this.channel = channel;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override public int totalLength(){
+		while(!eof) fill();
+		return windowEnd;
+	}
+	@Override public int totalLines(){
+		while(!eof) fill();
+		return lines;
+	}
+
+	@Override public int codePointAt(int position){
+		if(position<0) throw new ArrayIndexOutOfBoundsException(position);
+		if(position<windowStart)
+			throw new IllegalStateException("Position "+position+" is already released from the source");
+		while(position>=windowEnd){
+			if(eof) return EOF;
+			fill();
+		}
+		return window[position-windowStart];
+	}
+
+	@Override public boolean isInBounds(int position){
+		return position>=0&&codePointAt(position)!=EOF;
+	}
+
+	@Override public String substring(int start, int end){
+		if(start<0||start>end||end>windowEnd&&codePointAt(end-1)==EOF)
+			throw new IndexOutOfBoundsException("start: "+start+", end: "+end);
+		StringBuilder stb = new StringBuilder(end-start);
+		for(int i = start; i<end; i++) stb.appendCodePoint(codePointAt(i));
+		return stb.toString();
+	}
+
+	/**
+	 * @throws IllegalStateException If the position is already released
+	 */
+	@Override public int lineAt(int position){
+		if(position<0) throw new IndexOutOfBoundsException("position");
+		codePointAt(position); // reads the input up to the position
+		int low = lineBase, high = lines-1;
+		while(low<high){
+			int mid = (low+high+1)>>>1;
+			if(lineStarts[mid-lineBase]<=position) low = mid;
+			else high = mid-1;
+		}
+		return low;
+	}
+
+	/**
+	 * @throws IllegalStateException If the line is already released
+	 */
+	@Override public int lineStart(int line){
+		if(line<0) throw new ArrayIndexOutOfBoundsException(line);
+		if(line<lineBase) throw new IllegalStateException("Line "+line+" is already released from the source");
+		while(line>=lines&&!eof) fill();
+		if(line>=lines) throw new ArrayIndexOutOfBoundsException(line);
+		return lineStarts[line-lineBase];
+	}
+
+	/**
+	 * @throws IllegalStateException If part of the source is already released
+	 */
+	@Override public List<String> getRawSource(){
+		if(windowStart>0) throw new IllegalStateException("Part of the source is already released");
+		return super.getRawSource();
+	}
+
+	@Override boolean isWindowed(){
+		return true;
+	}
+	@Override void release(int position){
+		if(position>releasePoint) releasePoint = position;
+	}
+	@Override int windowStart(){
+		return windowStart;
+	}
+
+	/**
+	 * Reads and decodes next chunk of the input.
+	 */
+	private void fill(){
+		if(eof) return;
+		try{
+			int read = channel.read(in);
+			in.flip();
+			while(decoder.decode(in, out, read<0).isOverflow()) flush();
+			in.compact();
+			if(read<0){
+				while(decoder.flush(out).isOverflow()) flush();
+				flush();
+				if(pendingHighSurrogate!=0) append(pendingHighSurrogate);
+				// trailing line break is not a part of the source
+				pendingLineBreak = false;
+				eof = true;
+			}else flush();
+		}catch(IOException ex){
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private void flush(){
+		out.flip();
+		while(out.hasRemaining()){
+			char c = out.get();
+			if(lastIsCarriageReturn){
+				lastIsCarriageReturn = false;
+				if(c=='\n') continue;
+			}
+			if(pendingHighSurrogate!=0){
+				char high = pendingHighSurrogate;
+				pendingHighSurrogate = 0;
+				if(Character.isLowSurrogate(c)){
+					append(Character.toCodePoint(high, c));
+					continue;
+				}
+				append(high);
+			}
+			switch(c){
+				case '\r':
+					lastIsCarriageReturn = true;
+				case '\n':
+					if(pendingLineBreak) putLineBreak();
+					pendingLineBreak = true;
+					continue;
+			}
+			if(Character.isHighSurrogate(c)) pendingHighSurrogate = c;
+			else append(c);
+		}
+		out.clear();
+	}
+
+	private void append(int codePoint){
+		if(pendingLineBreak){
+			pendingLineBreak = false;
+			putLineBreak();
+		}
+		put(codePoint);
+	}
+
+	private void putLineBreak(){
+		put('\n');
+		if(lines-lineBase==lineStarts.length)
+			lineStarts = Arrays.copyOf(lineStarts, lineStarts.length*2);
+		lineStarts[lines-lineBase] = windowEnd;
+		lines++;
+	}
+
+	private void put(int codePoint){
+		int size = windowEnd-windowStart;
+		if(size==window.length){
+			int drop = Math.min(releasePoint, windowEnd)-windowStart;
+			// grow the window instead of shifting few codepoints each time
+			if(drop>0&&drop>=size/4){
+				System.arraycopy(window, drop, window, 0, size-drop);
+				windowStart = releasePoint;
+				size -= drop;
+				releaseLines();
+			}else{
+				if(size>=Integer.MAX_VALUE-8) throw new OutOfMemoryError("Window too large");
+				window = Arrays.copyOf(window, (int)Math.min(Integer.MAX_VALUE-8, size*2L));
+			}
+		}
+		window[size] = codePoint;
+		windowEnd++;
+	}
+
+	/**
+	 * Drops starts of the lines ending before the window.
+	 */
+	private void releaseLines(){
+		int base = lineBase;
+		while(base+1<lines&&lineStarts[base+1-lineBase]<=windowStart) base++;
+		if(base==lineBase) return;
+		int size = lines-base;
+		if(size<=lineStarts.length/4&&lineStarts.length>16){
+			int[] newLineStarts = new int[Math.max(16, lineStarts.length/2)];
+			System.arraycopy(lineStarts, base-lineBase, newLineStarts, 0, size);
+			lineStarts = newLineStarts;
+		}else System.arraycopy(lineStarts, base-lineBase, lineStarts, 0, size);
+		lineBase = base;
+	}
+}
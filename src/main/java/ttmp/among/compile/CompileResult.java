@@ -4,10 +4,14 @@ import org.jetbrains.annotations.Nullable;
 import ttmp.among.definition.AmongDefinition;
 import ttmp.among.exception.SussyCompile;
 import ttmp.among.obj.AmongRoot;
+import ttmp.among.util.ColumnUnit;
+import ttmp.among.util.LnCol;
 import ttmp.among.util.RootAndDefinition;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -22,12 +26,20 @@ public final class CompileResult{
 	private final AmongRoot root;
 	private final AmongDefinition definition;
 	private final List<Report> reports;
+	@Nullable private final StatementIndex statements;
+	private final boolean truncated;
 
 	public CompileResult(Source source, AmongRoot root, AmongDefinition definition, List<Report> reports){
+		this(source, root, definition, reports, null, false);
+	}
+	CompileResult(Source source, AmongRoot root, AmongDefinition definition, List<Report> reports,
+	              @Nullable StatementIndex statements, boolean truncated){
 		this.source = source;
 		this.root = root;
 		this.definition = definition;
 		this.reports = new ArrayList<>(reports);
+		this.statements = statements;
+		this.truncated = truncated;
 	}
 
 	/**
@@ -83,6 +95,26 @@ public final class CompileResult{
 		return Collections.unmodifiableList(reports);
 	}
 
+	/**
+	 * Whether the compilation stopped before reaching the end of the source. Compilation stops once the number of
+	 * errors reaches {@link ttmp.among.AmongEngine#maxErrors}; JSON read with {@link
+	 * ttmp.among.AmongEngine#readJson(Source)} also stops at the first syntax error, and both stop on unexpected
+	 * errors thrown while compiling. The root and definition of a truncated result only contain what was read before
+	 * the compilation stopped.
+	 *
+	 * @return Whether the compilation stopped before reaching the end of the source
+	 */
+	public boolean isTruncated(){
+		return truncated;
+	}
+
+	/**
+	 * @return Record of top level statements, or {@code null} if the result cannot be compiled incrementally
+	 */
+	@Nullable StatementIndex statements(){
+		return statements;
+	}
+
 	/**
 	 * Whether the operation was successful or not. It is determined by simply checking for presence of error reports;
 	 * any error report found indicates failure of the operation.
@@ -163,8 +195,36 @@ public final class CompileResult{
 			stb.append(types.get(i));
 		}
 
+		if(truncated) stb.append(" (stopped before the end of the source)");
 		logger.accept(stb.toString());
-		for(Report report : this.reports)
-			report.print(this.source, logger);
+		LnCol[] lineColumns = lineColumns(ColumnUnit.CODEPOINT);
+		for(int i = 0; i<reports.size(); i++)
+			reports.get(i).print(this.source, lineColumns[i], logger);
+	}
+
+	/**
+	 * Resolves line and column of every report in one pass.
+	 *
+	 * @param unit Unit of the column
+	 * @return Line and column of each report, in the same order as {@link CompileResult#reports()}. Reports without
+	 * source position will have {@code null} in their place. Reports with position already released from the source
+	 * will have the line and column recorded on their creation, with column counted in codepoints.
+	 */
+	public LnCol[] lineColumns(ColumnUnit unit){
+		LnCol[] result = new LnCol[reports.size()];
+		Integer[] indices = new Integer[reports.size()];
+		int size = 0;
+		for(int i = 0; i<reports.size(); i++){
+			Report r = reports.get(i);
+			if(r.isReleased(source)) result[i] = r.getLineColumn(source, unit);
+			else if(r.hasSourcePosition()) indices[size++] = i;
+		}
+		if(size==0) return result;
+		Arrays.sort(indices, 0, size, Comparator.comparingInt(i -> reports.get(i).sourcePosition()));
+		int[] positions = new int[size];
+		for(int i = 0; i<size; i++) positions[i] = reports.get(indices[i]).sourcePosition();
+		LnCol[] lineColumns = source.getLnCol(positions, unit);
+		for(int i = 0; i<size; i++) result[indices[i]] = lineColumns[i];
+		return result;
 	}
 }
@@ -0,0 +1,363 @@
+package ttmp.among.compile;
+
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.AmongEngine;
+import ttmp.among.definition.AmongDefinition;
+import ttmp.among.obj.Among;
+import ttmp.among.obj.AmongList;
+import ttmp.among.obj.AmongNameable;
+import ttmp.among.obj.AmongObject;
+import ttmp.among.obj.AmongRoot;
+import ttmp.among.util.ErrorHandling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ttmp.among.compile.Source.EOF;
+
+/**
+ * Parser reading JSON directly into objects, skipping tokenization modes, macros and operators of the Among syntax.
+ * Objects, arrays, strings, numbers, {@code true}, {@code false} and {@code null} are read into unnamed {@link
+ * AmongObject}s, unnamed {@link AmongList}s and {@link ttmp.among.obj.AmongPrimitive AmongPrimitive}s, same as
+ * {@link AmongParser} would read the JSON without any definition. Multiple values separated by whitespace are added to
+ * the root one by one, so JSON Lines can be read as well.<br>
+ * Unlike {@link AmongParser}, the parser does not recover from errors; parsing stops at the first syntax error, with
+ * the value being read at the moment thrown away, and the result is marked as {@link CompileResult#isTruncated()
+ * truncated}. Duplicate properties stop the parsing only if they reach {@link AmongEngine#maxErrors}.
+ *
+ * @see AmongEngine#readJson(Source)
+ */
+public final class JsonParser{
+	private static final String TRUE = "true";
+	private static final String FALSE = "false";
+	private static final String NULL = "null";
+
+	private final Source source;
+	private final AmongEngine engine;
+	private final AmongRoot root;
+	private final List<Report> reports = new ArrayList<>();
+	@Nullable private final StringPool stringPool;
+
+	private final StringBuilder literalBuffer = new StringBuilder();
+	private int srcIndex;
+	private int errors;
+	private boolean truncated;
+
+	/*
+	 * Objects and lists being read, and keys of the properties being read in each of them. Keys of lists are null.
+	 */
+	private final List<AmongNameable> stack = new ArrayList<>();
+	private final List<String> keys = new ArrayList<>();
+
+	public JsonParser(Source source, AmongEngine engine, AmongRoot root){
+		this.source = source;
+		this.engine = engine;
+		this.root = root;
+		this.stringPool = engine.stringPoolSize>0 ? new StringPool(engine.stringPoolSize, engine.stringPoolMaxLength) : null;
+	}
+
+	public CompileResult parse(){
+		try{
+			while(true){
+				skipWhitespace();
+				if(source.codePointAt(srcIndex)==EOF) break;
+				Among value = value();
+				if(value==null){
+					truncated = true;
+					break;
+				}
+				root.addObject(value);
+				switch(source.codePointAt(srcIndex)){
+					case EOF: case ' ': case '\t': case '\n': case '\r': continue;
+				}
+				reportError("Values should be separated with whitespace", srcIndex);
+				truncated = true;
+				break;
+			}
+		}catch(RuntimeException ex){
+			truncated = true;
+			reports.add(new Report(source, ReportType.ERROR, "Unexpected error", srcIndex, ex));
+		}
+		return new CompileResult(source, root, new AmongDefinition(), reports, null, truncated);
+	}
+
+	/**
+	 * Reads a value with all of its elements. Returns {@code null} if an error was reported.
+	 */
+	@Nullable private Among value(){
+		stack.clear();
+		keys.clear();
+		while(true){
+			skipWhitespace();
+			Among value;
+			switch(source.codePointAt(srcIndex)){
+				case '{':{
+					srcIndex++;
+					AmongObject object = Among.object();
+					skipWhitespace();
+					if(source.codePointAt(srcIndex)=='}'){
+						srcIndex++;
+						value = object;
+						break;
+					}
+					String key = key(object);
+					if(key==null) return null;
+					stack.add(object);
+					keys.add(key);
+					continue;
+				}
+				case '[':{
+					srcIndex++;
+					AmongList list = Among.list();
+					skipWhitespace();
+					if(source.codePointAt(srcIndex)==']'){
+						srcIndex++;
+						value = list;
+						break;
+					}
+					stack.add(list);
+					keys.add(null);
+					continue;
+				}
+				case '"':{
+					String s = string();
+					if(s==null) return null;
+					value = Among.value(s);
+					break;
+				}
+				case 't':
+					if(!word(TRUE)) return null;
+					value = Among.value(TRUE);
+					break;
+				case 'f':
+					if(!word(FALSE)) return null;
+					value = Among.value(FALSE);
+					break;
+				case 'n':
+					if(!word(NULL)) return null;
+					value = Among.value(NULL);
+					break;
+				case '-': case '0': case '1': case '2': case '3': case '4':
+				case '5': case '6': case '7': case '8': case '9':{
+					String n = number();
+					if(n==null) return null;
+					value = Among.value(n);
+					break;
+				}
+				default:
+					reportError("Expected value", srcIndex);
+					return null;
+			}
+			// add the value to its parent, then close the parents ending right after it
+			while(true){
+				source.release(srcIndex);
+				if(stack.isEmpty()) return value;
+				int top = stack.size()-1;
+				AmongNameable parent = stack.get(top);
+				if(parent.isObj()){
+					AmongObject object = parent.asObj();
+					String key = keys.get(top);
+					if(!object.hasProperty(key)) object.setProperty(key, value);
+				}else parent.asList().add(value);
+				skipWhitespace();
+				int c = source.codePointAt(srcIndex);
+				if(c==','){
+					srcIndex++;
+					if(parent.isObj()){
+						String key = key(parent.asObj());
+						if(key==null) return null;
+						keys.set(top, key);
+					}
+					break;
+				}else if(c==(parent.isObj() ? '}' : ']')){
+					srcIndex++;
+					value = stack.remove(top);
+					keys.remove(top);
+				}else{
+					if(c==EOF) reportError(parent.isObj() ? "Unterminated object" : "Unterminated list", srcIndex);
+					else reportError(parent.isObj() ? "Expected ',' or '}'" : "Expected ',' or ']'", srcIndex);
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a property key and the colon after it. Returns {@code null} if an error was reported.
+	 */
+	@Nullable private String key(AmongObject object){
+		skipWhitespace();
+		int keyStart = srcIndex;
+		if(source.codePointAt(srcIndex)!='"'){
+			reportError("Expected property key", srcIndex);
+			return null;
+		}
+		String key = string();
+		if(key==null) return null;
+		skipWhitespace();
+		if(source.codePointAt(srcIndex)!=':'){
+			reportError("Expected ':' after property key", srcIndex);
+			return null;
+		}
+		srcIndex++;
+		if(object.hasProperty(key)){
+			if(engine.allowDuplicateObjectProperty) report(ReportType.WARN, "Property '"+key+"' is already defined", keyStart);
+			else{
+				reportError("Property '"+key+"' is already defined", keyStart);
+				if(engine.maxErrors>0&&errors>=engine.maxErrors) return null;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Reads a string starting at the current position, which is a double quote. Strings without escape sequences are
+	 * read as a slice of the source. Returns {@code null} if an error was reported.
+	 */
+	@Nullable private String string(){
+		int start = srcIndex++;
+		int end = source.indexOfOrControl(srcIndex, '"', '\\');
+		if(source.codePointAt(end)=='"'){
+			String s = intern(srcIndex, end);
+			srcIndex = end+1;
+			return s;
+		}
+		literalBuffer.setLength(0);
+		while(true){
+			if(end>srcIndex) literalBuffer.append(source.substring(srcIndex, end));
+			srcIndex = end;
+			switch(source.codePointAt(srcIndex++)){
+				case '"':
+					return stringPool!=null ? stringPool.intern(literalBuffer) : literalBuffer.toString();
+				case '\\':{
+					int c = escape();
+					if(c==EOF) return null;
+					literalBuffer.appendCodePoint(c);
+					break;
+				}
+				case '\n': case EOF:
+					reportError("Unterminated string", start);
+					return null;
+				default:
+					reportError("Control characters should be escaped in strings", srcIndex-1);
+					return null;
+			}
+			end = source.indexOfOrControl(srcIndex, '"', '\\');
+		}
+	}
+
+	/**
+	 * Reads an escape sequence after the backslash. Returns {@link Source#EOF} if an error was reported.
+	 */
+	private int escape(){
+		int c = source.codePointAt(srcIndex++);
+		switch(c){
+			case '"': case '\\': case '/': return c;
+			case 'b': return '\b';
+			case 'f': return '\f';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 't': return '\t';
+			case 'u': return unicodeEscape();
+			default:
+				reportError("Invalid escape sequence", srcIndex-2);
+				return EOF;
+		}
+	}
+
+	/**
+	 * Reads 4 hexadecimal digits after {@code \u005Cu}. Invalid digits are handled according to {@link
+	 * AmongEngine#invalidUnicodeHandling}, with the sequence read as if {@code \u005Cu} notation never existed.
+	 */
+	private int unicodeEscape(){
+		int codePoint = 0;
+		for(int i = 0; i<4; i++){
+			int c = source.codePointAt(srcIndex+i);
+			int n = c<128 ? Character.digit(c, 16) : -1;
+			if(n<0){
+				if(engine.invalidUnicodeHandling==ErrorHandling.IGNORE) return 'u';
+				boolean warn = engine.invalidUnicodeHandling==ErrorHandling.WARN;
+				report(warn ? ReportType.WARN : ReportType.ERROR, c==EOF ? "Incomplete unicode escape" :
+						new StringBuilder().append("Invalid character '").appendCodePoint(c)
+								.append("' for unicode escape").toString(), srcIndex+i);
+				return warn ? 'u' : EOF;
+			}
+			codePoint = codePoint<<4|n;
+		}
+		srcIndex += 4;
+		return codePoint;
+	}
+
+	/**
+	 * Reads a number as defined by JSON. Returns {@code null} if an error was reported.
+	 */
+	@Nullable private String number(){
+		int start = srcIndex;
+		if(source.codePointAt(srcIndex)=='-') srcIndex++;
+		if(source.codePointAt(srcIndex)=='0') srcIndex++;
+		else if(!digits()) return null;
+		if(source.codePointAt(srcIndex)=='.'){
+			srcIndex++;
+			if(!digits()) return null;
+		}
+		int c = source.codePointAt(srcIndex);
+		if(c=='e'||c=='E'){
+			c = source.codePointAt(++srcIndex);
+			if(c=='+'||c=='-') srcIndex++;
+			if(!digits()) return null;
+		}
+		return intern(start, srcIndex);
+	}
+
+	/**
+	 * Skips one or more digits. Returns {@code false} if there isn't any digit, after reporting an error.
+	 */
+	private boolean digits(){
+		int start = srcIndex;
+		while(true){
+			int c = source.codePointAt(srcIndex);
+			if(c<'0'||c>'9') break;
+			srcIndex++;
+		}
+		if(srcIndex>start) return true;
+		reportError("Invalid number", srcIndex);
+		return false;
+	}
+
+	/**
+	 * Skips {@code word} at the current position. Returns {@code false} if it isn't there, after reporting an error.
+	 */
+	private boolean word(String word){
+		for(int i = 0; i<word.length(); i++){
+			if(source.codePointAt(srcIndex+i)!=word.charAt(i)){
+				reportError("Expected value", srcIndex);
+				return false;
+			}
+		}
+		srcIndex += word.length();
+		return true;
+	}
+
+	private void skipWhitespace(){
+		while(true){
+			switch(source.codePointAt(srcIndex)){
+				case ' ': case '\t': case '\n': case '\r':
+					srcIndex++;
+					continue;
+				default: return;
+			}
+		}
+	}
+
+	private String intern(int start, int end){
+		return stringPool!=null ? stringPool.intern(source, start, end) : source.substring(start, end);
+	}
+
+	private void reportError(String message, int srcIndex){
+		report(ReportType.ERROR, message, srcIndex);
+	}
+	private void report(ReportType type, String message, int srcIndex){
+		reports.add(new Report(source, type, message, srcIndex, null));
+		if(type==ReportType.ERROR) errors++;
+	}
+}
@@ -0,0 +1,57 @@
+package ttmp.among.compile;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Source consisting only of characters in Latin-1 range, stored with one byte per character. As every character
+ * is a codepoint by itself, positions map directly into the array.
+ */
+final class Latin1Source extends Source{
+	private final byte[] chars;
+	private final int length;
+	private final int[] lineStarts;
+
+	Latin1Source(byte[] chars, int length, int[] lineStarts, boolean retainRawSource){
+		super(retainRawSource);
+		this.chars = chars;
+		this.length = length;
+		this.lineStarts = lineStarts;
+	}
+
+	@Override public int totalLength(){
+		return length;
+	}
+	@Override public int totalLines(){
+		return lineStarts.length;
+	}
+
+	@Override public int codePointAt(int position){
+		return position<length ? chars[position]&0xFF : EOF;
+	}
+
+	@Override Source concurrentCopy(){
+		return this;
+	}
+
+	@Override int indexOf(int position, int c1, int c2, int c3){
+		for(; position<length; position++){
+			int c = chars[position]&0xFF;
+			if(c==c1||c==c2||c==c3) break;
+		}
+		return position;
+	}
+
+	@Override public boolean isInBounds(int position){
+		return position>=0&&position<length;
+	}
+
+	@Override public String substring(int start, int end){
+		if(start<0||end>length||start>end)
+			throw new IndexOutOfBoundsException("start: "+start+", end: "+end+", length: "+length);
+		return new String(chars, start, end-start, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override public int lineStart(int line){
+		return lineStarts[line];
+	}
+}
@@ -0,0 +1,212 @@
+package ttmp.among.compile;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Source backed by UTF-8 encoded bytes, usually a file mapped into memory. Codepoints are decoded on demand.<br>
+ * Codepoint positions are translated into byte offsets with two mechanisms: every codepoint before the first non-ASCII
+ * character (or carriage return) sits at the byte offset identical to its position, so ASCII-only sources need no
+ * additional bookkeeping at all. Past that point, byte offset of every {@link MappedSource#CHECKPOINT_INTERVAL}th
+ * codepoint is recorded, and the remaining distance is decoded from there. The position of last access is also cached,
+ * which makes sequential access - i.e. the tokenizer - decode each codepoint only once.
+ */
+final class MappedSource extends Source{
+	private static final int CHECKPOINT_INTERVAL = 64;
+
+	private final ByteBuffer buffer;
+	private final int length;
+	private final int[] lineStarts;
+	private final int lines;
+	/**
+	 * Number of codepoints at the start of the source where position is identical to byte offset.
+	 */
+	private final int directPrefix;
+	/**
+	 * Byte offsets of codepoints at {@code directPrefix + CHECKPOINT_INTERVAL * i}. {@code null} if the whole source
+	 * is in direct prefix.
+	 */
+	@Nullable private final int[] checkpoints;
+
+	private int cursorPosition;
+	private int cursorOffset;
+
+	/**
+	 * Size of the codepoint decoded by last call of {@link MappedSource#decode(int)}, in bytes.
+	 */
+	private int decodedSize;
+
+	MappedSource(ByteBuffer buffer, boolean retainRawSource){
+		super(retainRawSource);
+		this.buffer = buffer;
+		int limit = buffer.limit();
+
+		int[] lineStarts = new int[16];
+		int lines = 1;
+		int[] checkpoints = null;
+		int checkpointSize = 0;
+		int directPrefix = -1;
+
+		int position = 0;
+		int offset = 0;
+		boolean lastIsLineBreak = false;
+		while(offset<limit){
+			if(directPrefix<0){
+				byte b = buffer.get(offset);
+				if(b<0||b=='\r'){
+					directPrefix = position;
+					checkpoints = new int[16];
+				}
+			}
+			if(directPrefix>=0&&(position-directPrefix)%CHECKPOINT_INTERVAL==0){
+				if(checkpointSize==checkpoints.length)
+					checkpoints = Arrays.copyOf(checkpoints, checkpointSize*2);
+				checkpoints[checkpointSize++] = offset;
+			}
+			int c = decode(offset);
+			offset += decodedSize;
+			position++;
+			if(lastIsLineBreak = c=='\n'){
+				if(lines==lineStarts.length)
+					lineStarts = Arrays.copyOf(lineStarts, lines*2);
+				lineStarts[lines++] = position;
+			}
+		}
+		// trailing line break is not a part of the source
+		if(lastIsLineBreak){
+			position--;
+			lines--;
+		}
+
+		this.length = position;
+		this.lineStarts = lineStarts;
+		this.lines = lines;
+		this.directPrefix = directPrefix<0 ? position : directPrefix;
+		this.checkpoints = checkpoints;
+	}
+
+	private MappedSource(MappedSource source){
+		super(false);
+		this.buffer = source.buffer.duplicate();
+		this.length = source.length;
+		this.lineStarts = source.lineStarts;
+		this.lines = source.lines;
+		this.directPrefix = source.directPrefix;
+		this.checkpoints = source.checkpoints;
+	}
+
+	@Override public int totalLength(){
+		return length;
+	}
+	@Override public int totalLines(){
+		return lines;
+	}
+
+	@Override public int codePointAt(int position){
+		if(position<0) throw new ArrayIndexOutOfBoundsException(position);
+		if(position>=length) return EOF;
+		return decode(offsetOf(position));
+	}
+
+	@Override int indexOf(int position, int c1, int c2, int c3){
+		for(; position<directPrefix; position++){
+			int c = buffer.get(position);
+			if(c==c1||c==c2||c==c3) return position;
+		}
+		return super.indexOf(position, c1, c2, c3);
+	}
+	@Override int indexOfOrControl(int position, int c1, int c2){
+		for(; position<directPrefix; position++){
+			int c = buffer.get(position);
+			if(c<0x20||c==c1||c==c2) return position;
+		}
+		return super.indexOfOrControl(position, c1, c2);
+	}
+
+	@Override Source concurrentCopy(){
+		return new MappedSource(this);
+	}
+
+	@Override public String substring(int start, int end){
+		if(start<0||end>length||start>end)
+			throw new IndexOutOfBoundsException("start: "+start+", end: "+end+", length: "+length);
+		if(end>directPrefix) return super.substring(start, end);
+		byte[] bytes = new byte[end-start];
+		for(int i = 0; i<bytes.length; i++) bytes[i] = buffer.get(start+i);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override public int lineStart(int line){
+		if(line<0||line>=lines) throw new ArrayIndexOutOfBoundsException(line);
+		return lineStarts[line];
+	}
+
+	private int offsetOf(int position){
+		if(position<directPrefix) return position;
+		int offset, current;
+		if(position>=cursorPosition&&position-cursorPosition<CHECKPOINT_INTERVAL){
+			offset = cursorOffset;
+			current = cursorPosition;
+		}else{
+			int checkpoint = (position-directPrefix)/CHECKPOINT_INTERVAL;
+			//noinspection ConstantConditions
+			offset = checkpoints[checkpoint];
+			current = directPrefix+checkpoint*CHECKPOINT_INTERVAL;
+		}
+		for(; current<position; current++){
+			decode(offset);
+			offset += decodedSize;
+		}
+		cursorPosition = position;
+		cursorOffset = offset;
+		return offset;
+	}
+
+	/**
+	 * Decodes the codepoint at the offset. Line breaks are normalized to {@code '\n'}. Size of the codepoint is stored
+	 * in {@link MappedSource#decodedSize}.
+	 */
+	private int decode(int offset){
+		int b = buffer.get(offset)&0xFF;
+		if(b<0x80){
+			if(b=='\r'){
+				decodedSize = offset+1<buffer.limit()&&buffer.get(offset+1)=='\n' ? 2 : 1;
+				return '\n';
+			}
+			decodedSize = 1;
+			return b;
+		}
+		int size, codePoint, min;
+		if(b>=0xC2&&b<=0xDF){
+			size = 2;
+			codePoint = b&0x1F;
+			min = 0x80;
+		}else if(b>=0xE0&&b<=0xEF){
+			size = 3;
+			codePoint = b&0x0F;
+			min = 0x800;
+		}else if(b>=0xF0&&b<=0xF4){
+			size = 4;
+			codePoint = b&0x07;
+			min = 0x10000;
+		}else return invalid();
+		if(offset+size>buffer.limit()) return invalid();
+		for(int i = 1; i<size; i++){
+			int b2 = buffer.get(offset+i)&0xFF;
+			if((b2&0xC0)!=0x80) return invalid();
+			codePoint = codePoint<<6|b2&0x3F;
+		}
+		if(codePoint<min||codePoint>0x10FFFF||Character.isSurrogate((char)codePoint)&&codePoint<=0xFFFF)
+			return invalid();
+		decodedSize = size;
+		return codePoint;
+	}
+
+	private int invalid(){
+		decodedSize = 1;
+		return 0xFFFD;
+	}
+}
@@ -1,6 +1,7 @@
 package ttmp.among.compile;
 
 import org.jetbrains.annotations.Nullable;
+import ttmp.among.util.ColumnUnit;
 import ttmp.among.util.LnCol;
 
 import java.util.ArrayList;
@@ -17,12 +18,29 @@ public class Report{
 	private final int sourcePosition;
 	@Nullable private final Throwable exception;
 	private final List<String> hints;
+	/**
+	 * Line and column of the source position, recorded on creation if the source may release the position afterwards.
+	 */
+	@Nullable private final LnCol lineColumn;
 
 	public Report(ReportType type, String message, int sourcePosition, @Nullable Throwable exception, String... hints){
+		this(type, message, sourcePosition, exception, null, hints);
+	}
+	/**
+	 * Creates a report, recording line and column of the source position if {@code source} is {@link
+	 * Source#isWindowed() windowed}. Line and column of the reports are still available after the position is
+	 * released from the source.
+	 */
+	Report(Source source, ReportType type, String message, int sourcePosition, @Nullable Throwable exception, String... hints){
+		this(type, message, sourcePosition, exception,
+				source.isWindowed()&&sourcePosition>=source.windowStart() ? source.getLnCol(sourcePosition) : null, hints);
+	}
+	private Report(ReportType type, String message, int sourcePosition, @Nullable Throwable exception, @Nullable LnCol lineColumn, String... hints){
 		this.type = type;
 		this.message = message;
 		this.sourcePosition = sourcePosition;
 		this.exception = exception;
+		this.lineColumn = lineColumn;
 		this.hints = new ArrayList<>();
 		Collections.addAll(this.hints, hints);
 	}
@@ -46,28 +64,69 @@ public class Report{
 		return Collections.unmodifiableList(hints);
 	}
 
+	/**
+	 * @return Copy of this report with different source position
+	 */
+	public Report withSourcePosition(int sourcePosition){
+		return new Report(type, message, sourcePosition, exception, hints.toArray(new String[0]));
+	}
+
 	@Nullable public LnCol getLineColumn(Source source){
-		return hasSourcePosition() ? source.getLnCol(sourcePosition) : null;
+		if(!hasSourcePosition()) return null;
+		return isReleased(source) ? lineColumn : source.getLnCol(sourcePosition);
+	}
+	/**
+	 * Returns line and column of the source position, with column counted in {@code unit}. If the position is already
+	 * released from the source, line and column recorded on creation are returned instead, with column counted in
+	 * codepoints.
+	 */
+	@Nullable public LnCol getLineColumn(Source source, ColumnUnit unit){
+		if(!hasSourcePosition()) return null;
+		return isReleased(source) ? lineColumn : source.getLnCol(sourcePosition, unit);
+	}
+
+	/**
+	 * @return Whether the source position is already released from the source
+	 */
+	boolean isReleased(Source source){
+		return hasSourcePosition()&&sourcePosition<source.windowStart();
 	}
 
 	public void print(Source source, Consumer<String> logger){
-		LnCol lc = getLineColumn(source);
+		print(source, getLineColumn(source), logger);
+	}
 
-		logger.accept(lc!=null ? "["+lc+"] "+message : message);
+	/**
+	 * Prints this report with line and column resolved beforehand.
+	 *
+	 * @param source     The source
+	 * @param lineColumn Line and column of this report's source position, counted in codepoints. Expected to be
+	 *                   {@code null} if and only if this report does not have source position.
+	 * @param logger     Logger
+	 * @see Source#getLnCol(int[], ColumnUnit)
+	 */
+	public void print(Source source, @Nullable LnCol lineColumn, Consumer<String> logger){
+		logger.accept(lineColumn!=null ? "["+lineColumn+"] "+message : message);
 		if(exception!=null){
 			logger.accept(exception.toString());
 			exception.printStackTrace();
 		}
-		if(lc!=null){
-			logger.accept(" "+lc.line+" |"+getLineSnippet(sourcePosition, source));
+		if(lineColumn!=null&&sourcePosition>=source.windowStart()){
+			logger.accept(" "+lineColumn.line+" |"+getLineSnippet(sourcePosition, lineColumn.line-1, source));
 		}
 		for(String hint : this.hints) logger.accept("hint: "+hint);
 	}
 
 	public static String getLineSnippet(int sourcePosition, Source source){
-		int line = source.lineAt(sourcePosition);
+		return getLineSnippet(sourcePosition, source.lineAt(sourcePosition), source);
+	}
+	public static String getLineSnippet(int sourcePosition, int line, Source source){
 		int lineStart = source.lineStart(line);
 		int lineSize = source.lineSize(line);
+		if(lineStart<source.windowStart()){
+			lineSize -= source.windowStart()-lineStart;
+			lineStart = source.windowStart();
+		}
 
 		if(lineSize>50){
 			lineStart = Math.max(lineStart, sourcePosition-30);
@@ -1,22 +1,33 @@
 package ttmp.among.compile;
 
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.util.ColumnUnit;
 import ttmp.among.util.LnCol;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.IntStream;
 
 /**
- * Source stored as a codepoint array (which is just a fancy word for UTF-32 encoding (wait, I think this one is
- * fancier)), for faster access<br>
- * Also contains information about number of lines and start point.
+ * Source code, accessed by codepoint index.<br>
+ * Also contains information about number of lines and start point. Line breaks ({@code \r\n}, {@code \r} and {@code
+ * \n}) are all exposed as single {@code '\n'} codepoint, and the line break at the very end of the source (if there
+ * is one) is not considered part of the source.<br>
+ * Instances are not thread safe; some implementations cache decoding state between calls.
  */
-public final class Source{
+public abstract class Source{
 	/**
 	 * Creates new {@code Source} from {@code str}.
 	 *
@@ -24,81 +35,305 @@ public final class Source{
 	 * @return New source
 	 */
 	public static Source of(String src){
-		return new Source(src.split("\r\n?|\n"));
+		return of(src, false);
 	}
 
 	/**
-	 * Creates new {@code Source} from strings read with {@code reader}. This method closes the reader.
+	 * Creates new {@code Source} from {@code src}.
+	 *
+	 * @param src The source
+	 * @return New source
+	 */
+	public static Source of(CharSequence src){
+		return of(src, false);
+	}
+
+	/**
+	 * Creates new {@code Source} from {@code src}.
+	 *
+	 * @param src             The source
+	 * @param retainRawSource If {@code true}, the list of lines will be retained after the first call of {@link
+	 *                        Source#getRawSource()}; otherwise it will be rebuilt on each call
+	 * @return New source
+	 */
+	public static Source of(CharSequence src, boolean retainRawSource){
+		SourceBuilder b = new SourceBuilder(src.length(), retainRawSource);
+		b.append(src, 0, src.length());
+		return b.build();
+	}
+
+	/**
+	 * Creates new {@code Source} from {@code src}. The array is not referenced by the source.
+	 *
+	 * @param src The source
+	 * @return New source
+	 */
+	public static Source of(char[] src){
+		return of(src, 0, src.length, false);
+	}
+
+	/**
+	 * Creates new {@code Source} from portion of {@code src}. The array is not referenced by the source.
+	 *
+	 * @param src             The source
+	 * @param offset          Starting index of the source, inclusive
+	 * @param length          Number of chars to read
+	 * @param retainRawSource If {@code true}, the list of lines will be retained after the first call of {@link
+	 *                        Source#getRawSource()}; otherwise it will be rebuilt on each call
+	 * @return New source
+	 * @throws IndexOutOfBoundsException If {@code offset} and {@code length} specify range outside of {@code src}
+	 */
+	public static Source of(char[] src, int offset, int length, boolean retainRawSource){
+		if(offset<0||length<0||offset+length>src.length)
+			throw new IndexOutOfBoundsException("offset: "+offset+", length: "+length+", array length: "+src.length);
+		SourceBuilder b = new SourceBuilder(length, retainRawSource);
+		b.append(src, offset, offset+length);
+		return b.build();
+	}
+
+	/**
+	 * Creates new {@code Source} from {@code src} encoded with {@code charset}. Malformed input and unmappable
+	 * characters are replaced with the charset's default replacement.
+	 *
+	 * @param src     The source
+	 * @param charset Charset used to encode the source
+	 * @return New source
+	 */
+	public static Source of(byte[] src, Charset charset){
+		return of(ByteBuffer.wrap(src), charset, false);
+	}
+
+	/**
+	 * Creates new {@code Source} from remaining bytes of {@code src} encoded with {@code charset}. The bytes are
+	 * decoded on the fly; no intermediate string is created. Malformed input and unmappable characters are replaced
+	 * with the charset's default replacement.<br>
+	 * The position of {@code src} is not modified.
+	 *
+	 * @param src             The source
+	 * @param charset         Charset used to encode the source
+	 * @param retainRawSource If {@code true}, the list of lines will be retained after the first call of {@link
+	 *                        Source#getRawSource()}; otherwise it will be rebuilt on each call
+	 * @return New source
+	 */
+	public static Source of(ByteBuffer src, Charset charset, boolean retainRawSource){
+		ByteBuffer in = src.duplicate();
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		SourceBuilder b = new SourceBuilder((int)Math.min(Integer.MAX_VALUE-8,
+				(long)(in.remaining()*(double)decoder.averageCharsPerByte())), retainRawSource);
+		CharBuffer out = CharBuffer.allocate(8192);
+		while(decoder.decode(in, out, true).isOverflow()) flush(out, b);
+		while(decoder.flush(out).isOverflow()) flush(out, b);
+		flush(out, b);
+		return b.build();
+	}
+
+	private static void flush(CharBuffer buffer, SourceBuilder builder){
+		buffer.flip();
+		builder.append(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.arrayOffset()+buffer.limit());
+		buffer.clear();
+	}
+
+	/**
+	 * Creates new {@code Source} from chars read with {@code reader}. This method closes the reader.
 	 *
 	 * @param reader The reader to be used; it will be closed regardless of success or failure
-	 * @return Source with strings read from {@code reader}
-	 * @throws IOException          If an I/O error occurs
-	 * @throws UncheckedIOException If an I/O error occurs(but it's unchecked(because java's checked exception system
-	 *                              fucking sucks lmao))
+	 * @return Source with chars read from {@code reader}
+	 * @throws IOException If an I/O error occurs
 	 */
 	public static Source read(Reader reader) throws IOException{
-		try(BufferedReader br = new BufferedReader(reader)){
-			return new Source(br.lines().toArray(String[]::new));
+		return read(reader, false);
+	}
+
+	/**
+	 * Creates new {@code Source} from chars read with {@code reader}. This method closes the reader.
+	 *
+	 * @param reader          The reader to be used; it will be closed regardless of success or failure
+	 * @param retainRawSource If {@code true}, the list of lines will be retained after the first call of {@link
+	 *                        Source#getRawSource()}; otherwise it will be rebuilt on each call
+	 * @return Source with chars read from {@code reader}
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static Source read(Reader reader, boolean retainRawSource) throws IOException{
+		try(Reader r = reader){
+			SourceBuilder b = new SourceBuilder(8192, retainRawSource);
+			char[] buffer = new char[8192];
+			for(int read; (read = r.read(buffer))>=0; )
+				b.append(buffer, 0, read);
+			return b.build();
 		}
 	}
 
 	/**
-	 * Special value indicating end of file.
+	 * Creates new {@code Source} backed by UTF-8 encoded file at {@code path}, mapped into memory. The content of the
+	 * file is not copied into heap; codepoints are decoded on demand. Invalid byte sequences are decoded as {@code
+	 * U+FFFD}.<br>
+	 * The file is scanned once on creation to locate line starts. Modifying the file while the source is in use
+	 * produces undefined behavior.
+	 *
+	 * @param path Path of the file
+	 * @return Source backed by the file
+	 * @throws IOException If an I/O error occurs, or the file is larger than 2GB
 	 */
-	public static final int EOF = -1;
+	public static Source map(Path path) throws IOException{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			long size = channel.size();
+			if(size>Integer.MAX_VALUE) throw new IOException("File too large to be mapped: "+path);
+			return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), false);
+		}
+	}
 
 	/**
-	 * Raw string source.
+	 * Creates new {@code Source} decoded from UTF-8 encoded bytes read from {@code channel}.
+	 *
+	 * @param channel The channel
+	 * @return New source
+	 * @see Source#stream(ReadableByteChannel, Charset)
 	 */
-	private final String[] rawSource;
+	public static Source stream(ReadableByteChannel channel){
+		return stream(channel, StandardCharsets.UTF_8);
+	}
+
 	/**
-	 * Codepoints. The value directly corresponds to {@link Source#rawSource}, with line break('\n') inserted
-	 * between each line.
+	 * Creates new {@code Source} decoded from bytes read from {@code channel}. The input is read and decoded as it is
+	 * accessed, and only a bounded window of the source behind the tokenizer's position is kept in memory; memory usage
+	 * does not depend on the size of the input, apart from the start position of each line which is retained for
+	 * resolving line and column of reports. Malformed input and unmappable characters are replaced with the charset's
+	 * default replacement.<br>
+	 * Text of the portion of the source left behind by the tokenizer is not accessible after parsing; accessing it, i.e.
+	 * via {@link Source#getRawSource()} or {@link Source#substring(int, int)}, throws {@link IllegalStateException}.
+	 * Report snippets are not printed for such positions. Querying length or line count of the source reads the rest
+	 * of the input into memory.<br>
+	 * The channel should be in blocking mode. It is not closed by the source. I/O errors are thrown as {@link
+	 * java.io.UncheckedIOException}.
+	 *
+	 * @param channel The channel
+	 * @param charset Charset used to encode the source
+	 * @return New source
 	 */
-	private final int[] codePoints;
+	public static Source stream(ReadableByteChannel channel, Charset charset){
+		return new ChannelSource(channel, charset);
+	}
+
 	/**
-	 * Positions of starting char of each {@link Source#rawSource}.
+	 * Special value indicating end of file.
 	 */
-	private final int[] lineStarts;
+	public static final int EOF = -1;
 
-	private Source(String[] rawSource){
-		this.rawSource = rawSource;
-		IntStream.Builder b = IntStream.builder();
-		this.lineStarts = new int[rawSource.length];
-		int position = 0;
-		for(int i = 0; i<rawSource.length; i++){
-			if(i!=0){
-				b.accept('\n');
-				position++;
-			}
-			lineStarts[i] = position;
-			rawSource[i].codePoints().forEach(b);
-			position += rawSource[i].codePointCount(0, rawSource[i].length());
-		}
-		this.codePoints = b.build().toArray();
+	private final boolean retainRawSource;
+	@Nullable private List<String> rawSource;
+
+	Source(boolean retainRawSource){
+		this.retainRawSource = retainRawSource;
 	}
 
+	/**
+	 * Returns each line of the source, without line breaks. The list is built from the source on demand, and only
+	 * retained if the source was created with the option.
+	 *
+	 * @return Unmodifiable list of each line of the source
+	 */
 	public List<String> getRawSource(){
-		return Collections.unmodifiableList(Arrays.asList(rawSource));
+		if(rawSource!=null) return rawSource;
+		String[] lines = new String[totalLines()];
+		for(int i = 0; i<lines.length; i++)
+			lines[i] = substring(lineStart(i), lineEnd(i));
+		List<String> list = Collections.unmodifiableList(Arrays.asList(lines));
+		if(retainRawSource) rawSource = list;
+		return list;
 	}
 
-	public int totalLength(){
-		return codePoints.length;
+	/**
+	 * @return Whether the source drops portion of the text behind the tokenizer
+	 */
+	boolean isWindowed(){
+		return false;
+	}
+	/**
+	 * Notifies the source that positions before {@code position} will not be accessed anymore.
+	 */
+	void release(int position){}
+	/**
+	 * @return First position with its text still accessible
+	 */
+	int windowStart(){
+		return 0;
 	}
-	public int totalLines(){
-		return lineStarts.length;
+	/**
+	 * Returns a source with identical content that can be read from another thread concurrently with this source.
+	 * Sources without mutable state may return themselves.
+	 *
+	 * @return Source with identical content safe to be used concurrently with this source, or {@code null} if the
+	 * source does not support concurrent access
+	 */
+	@Nullable Source concurrentCopy(){
+		return null;
+	}
+	/**
+	 * Searches the source for any of the three codepoints, starting from {@code position}. Used for skipping long runs
+	 * of text not requiring any processing.
+	 *
+	 * @param position Position to start the search from
+	 * @param c1       Codepoint to search for
+	 * @param c2       Codepoint to search for
+	 * @param c3       Codepoint to search for
+	 * @return First position from {@code position} with any of the three codepoints, or with {@link Source#EOF} if
+	 * there's none
+	 */
+	int indexOf(int position, int c1, int c2, int c3){
+		while(true){
+			int c = codePointAt(position);
+			if(c==EOF||c==c1||c==c2||c==c3) return position;
+			position++;
+		}
 	}
 
+	/**
+	 * Searches the source for either of the two codepoints or a control character (U+0000 to U+001F), starting from
+	 * {@code position}.
+	 *
+	 * @param position Position to start the search from
+	 * @param c1       Codepoint to search for
+	 * @param c2       Codepoint to search for
+	 * @return First position from {@code position} with either of the two codepoints or a control character, or with
+	 * {@link Source#EOF} if there's none
+	 */
+	int indexOfOrControl(int position, int c1, int c2){
+		while(true){
+			int c = codePointAt(position);
+			if(c<0x20||c==c1||c==c2) return position; // EOF is negative
+			position++;
+		}
+	}
+
+	public abstract int totalLength();
+	public abstract int totalLines();
+
 	/**
 	 * @return Codepoint at the position, or {@link Source#EOF} if the position is outside the source's range.
 	 * @throws ArrayIndexOutOfBoundsException If {@code position < 0}
 	 */
-	public int codePointAt(int position){
-		return position<codePoints.length ? codePoints[position] : EOF;
-	}
+	public abstract int codePointAt(int position);
 
 	public boolean isInBounds(int position){
-		return position>=0&&position<codePoints.length;
+		return position>=0&&position<totalLength();
+	}
+
+	/**
+	 * Returns portion of the source as string.
+	 *
+	 * @param start Starting position, inclusive
+	 * @param end   Ending position, exclusive
+	 * @return Portion of the source between {@code start} and {@code end}
+	 * @throws IndexOutOfBoundsException If {@code start < 0}, {@code end > totalLength()} or {@code start > end}
+	 */
+	public String substring(int start, int end){
+		if(start<0||end>totalLength()||start>end)
+			throw new IndexOutOfBoundsException("start: "+start+", end: "+end+", length: "+totalLength());
+		StringBuilder stb = new StringBuilder(end-start);
+		for(int i = start; i<end; i++) stb.appendCodePoint(codePointAt(i));
+		return stb.toString();
 	}
 
 	/**
@@ -107,18 +342,17 @@ public final class Source{
 	 */
 	public int lineAt(int position){
 		if(position<0) throw new IndexOutOfBoundsException("position");
-		for(int i = 0; i<lineStarts.length; i++){
-			int ls = lineStart(i);
-			if(ls==position) return i;
-			if(ls>position) return i-1;
+		int low = 0, high = totalLines()-1;
+		while(low<high){
+			int mid = (low+high+1)>>>1;
+			if(lineStart(mid)<=position) low = mid;
+			else high = mid-1;
 		}
-		return lineStarts.length-1;
-	}
-	public int lineStart(int line){
-		return lineStarts[line];
+		return low;
 	}
+	public abstract int lineStart(int line);
 	public int lineEnd(int line){
-		return lineStarts.length-1==line ? totalLength() : lineStarts[line+1]-1;
+		return totalLines()-1==line ? totalLength() : lineStart(line+1)-1;
 	}
 	public int lineSize(int line){
 		return lineEnd(line)-lineStart(line);
@@ -128,4 +362,60 @@ public final class Source{
 		int l = lineAt(position);
 		return new LnCol(l+1, position-lineStart(l)+1);
 	}
+
+	/**
+	 * Returns line and column of the position, with column counted in {@code unit}.
+	 *
+	 * @param position Position in the source
+	 * @param unit     Unit of the column
+	 * @return Line and column of the position
+	 * @throws IndexOutOfBoundsException If {@code position < 0}
+	 */
+	public LnCol getLnCol(int position, ColumnUnit unit){
+		int l = lineAt(position);
+		return new LnCol(l+1, columnWidth(lineStart(l), position, unit)+1);
+	}
+
+	/**
+	 * Resolves line and column of each position in one pass, with column counted in {@code unit}. The positions should
+	 * be sorted in ascending order.
+	 *
+	 * @param positions Positions in the source, sorted in ascending order
+	 * @param unit      Unit of the column
+	 * @return Line and column of each position, in the same order
+	 * @throws IllegalArgumentException  If {@code positions} is not sorted
+	 * @throws IndexOutOfBoundsException If any of the positions is negative
+	 */
+	public LnCol[] getLnCol(int[] positions, ColumnUnit unit){
+		LnCol[] result = new LnCol[positions.length];
+		if(positions.length==0) return result;
+		if(positions[0]<0) throw new IndexOutOfBoundsException("position");
+		int line = lineAt(positions[0]);
+		int prevPosition = lineStart(line);
+		int prevWidth = 0;
+		for(int i = 0; i<positions.length; i++){
+			int position = positions[i];
+			if(i>0&&position<positions[i-1]) throw new IllegalArgumentException("Positions not sorted");
+			if(line+1<totalLines()&&lineStart(line+1)<=position){
+				do line++;
+				while(line+1<totalLines()&&lineStart(line+1)<=position);
+				prevPosition = lineStart(line);
+				prevWidth = 0;
+			}
+			prevWidth += columnWidth(prevPosition, position, unit);
+			prevPosition = position;
+			result[i] = new LnCol(line+1, prevWidth+1);
+		}
+		return result;
+	}
+
+	private int columnWidth(int start, int end, ColumnUnit unit){
+		if(unit==ColumnUnit.CODEPOINT) return end-start;
+		int width = 0;
+		for(int i = start; i<end; i++){
+			int c = codePointAt(i);
+			width += c==EOF ? 1 : unit.width(c);
+		}
+		return width;
+	}
 }
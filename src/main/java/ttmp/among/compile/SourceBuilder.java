@@ -0,0 +1,124 @@
+package ttmp.among.compile;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Builds {@link Source} from stream of chars in a single pass. Line breaks are normalized and line starts are recorded
+ * as chars are appended; characters are stored in Latin-1 until the first character outside the range appears, which
+ * inflates the store to UTF-16.
+ */
+final class SourceBuilder{
+	private final boolean retainRawSource;
+
+	@Nullable private byte[] latin1;
+	@Nullable private char[] utf16;
+	/**
+	 * Number of chars stored.
+	 */
+	private int size;
+	/**
+	 * Number of codepoints stored.
+	 */
+	private int position;
+
+	private int[] lineStarts = new int[16];
+	private int lines = 1;
+	private int[] supplementary = new int[0];
+	private int supplementarySize;
+
+	private boolean lastIsCarriageReturn;
+	private boolean lastIsHighSurrogate;
+
+	/**
+	 * @param capacity        Expected number of chars
+	 * @param retainRawSource See {@link Source#of(CharSequence, boolean)}
+	 */
+	SourceBuilder(int capacity, boolean retainRawSource){
+		this.retainRawSource = retainRawSource;
+		this.latin1 = new byte[Math.max(16, capacity)];
+	}
+
+	void append(CharSequence seq, int start, int end){
+		for(int i = start; i<end; i++) append(seq.charAt(i));
+	}
+
+	void append(char[] chars, int start, int end){
+		for(int i = start; i<end; i++) append(chars[i]);
+	}
+
+	void append(char c){
+		if(lastIsCarriageReturn){
+			lastIsCarriageReturn = false;
+			if(c=='\n') return;
+		}
+		switch(c){
+			case '\r':
+				lastIsCarriageReturn = true;
+			case '\n':
+				put('\n');
+				position++;
+				if(lines==lineStarts.length)
+					lineStarts = Arrays.copyOf(lineStarts, lines*2);
+				lineStarts[lines++] = position;
+				lastIsHighSurrogate = false;
+				return;
+		}
+		if(c>0xFF&&utf16==null) inflate();
+		put(c);
+		if(lastIsHighSurrogate&&Character.isLowSurrogate(c)){
+			if(supplementarySize==supplementary.length)
+				supplementary = Arrays.copyOf(supplementary, Math.max(16, supplementarySize*2));
+			supplementary[supplementarySize++] = position-1;
+			lastIsHighSurrogate = false;
+			return;
+		}
+		lastIsHighSurrogate = Character.isHighSurrogate(c);
+		position++;
+	}
+
+	private void put(char c){
+		if(utf16!=null){
+			if(size==utf16.length) utf16 = Arrays.copyOf(utf16, grow(size));
+			utf16[size++] = c;
+		}else{
+			//noinspection ConstantConditions
+			if(size==latin1.length) latin1 = Arrays.copyOf(latin1, grow(size));
+			latin1[size++] = (byte)c;
+		}
+	}
+
+	private void inflate(){
+		// capacity of the Latin-1 store may be an estimate far from the actual size (e.g. byte count of UTF-8 input)
+		char[] chars = new char[Math.max(16, grow(size))];
+		for(int i = 0; i<size; i++) chars[i] = (char)(latin1[i]&0xFF);
+		this.utf16 = chars;
+		this.latin1 = null;
+	}
+
+	private static int grow(int size){
+		if(size>=Integer.MAX_VALUE-8) throw new OutOfMemoryError("Source too large");
+		return (int)Math.min(Integer.MAX_VALUE-8, size*2L);
+	}
+
+	Source build(){
+		int lines = this.lines;
+		int length = this.position;
+		int size = this.size;
+		// trailing line break is not a part of the source
+		if(lines>1&&lineStarts[lines-1]==length){
+			lines--;
+			length--;
+			size--;
+		}
+		int[] lineStarts = lines==this.lineStarts.length ? this.lineStarts : Arrays.copyOf(this.lineStarts, lines);
+		if(utf16!=null){
+			char[] chars = size==utf16.length ? utf16 : Arrays.copyOf(utf16, size);
+			return new Utf16Source(chars, length, Arrays.copyOf(supplementary, supplementarySize), lineStarts, retainRawSource);
+		}
+		//noinspection ConstantConditions
+		byte[] chars = size==latin1.length ? latin1 : Arrays.copyOf(latin1, size);
+		return new Latin1Source(chars, size, lineStarts, retainRawSource);
+	}
+}
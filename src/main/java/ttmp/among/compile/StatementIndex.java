@@ -0,0 +1,105 @@
+package ttmp.among.compile;
+
+import ttmp.among.definition.AmongDefinition;
+
+import java.util.Arrays;
+
+/**
+ * Record of each top level statement parsed, used for incremental compilation. Each statement is recorded with
+ * position of its first token, and the number of reports and objects present before the statement was parsed.
+ *
+ * @see AmongParser#parseIncremental(AmongEngine, CompileResult, int, int, CharSequence)
+ */
+final class StatementIndex{
+	private static final byte DEFINITION = 1;
+	private static final byte BUFFERED = 2;
+
+	/**
+	 * Imported definitions at the end of the compilation.
+	 */
+	final AmongDefinition importDefinition;
+
+	private int size;
+	private int[] starts = new int[16];
+	private int[] reportStarts = new int[16];
+	private int[] objectStarts = new int[16];
+	private byte[] flags = new byte[16];
+
+	StatementIndex(AmongDefinition importDefinition){
+		this.importDefinition = importDefinition;
+	}
+
+	int size(){
+		return size;
+	}
+	/**
+	 * @return Position of the first token of the statement
+	 */
+	int start(int statement){
+		return starts[statement];
+	}
+	int reportStart(int statement){
+		return reportStarts[statement];
+	}
+	int objectStart(int statement){
+		return objectStarts[statement];
+	}
+	/**
+	 * @return Whether the statement is macro/operator/keyword definition, undef statement or use statement
+	 */
+	boolean isDefinition(int statement){
+		return (flags[statement]&DEFINITION)!=0;
+	}
+	/**
+	 * @return Whether the first token of the statement was already read while parsing the previous statement
+	 */
+	boolean isBuffered(int statement){
+		return (flags[statement]&BUFFERED)!=0;
+	}
+
+	void add(int start, int reportStart, int objectStart, boolean buffered, boolean definition){
+		if(size==starts.length){
+			int newSize = size*2;
+			starts = Arrays.copyOf(starts, newSize);
+			reportStarts = Arrays.copyOf(reportStarts, newSize);
+			objectStarts = Arrays.copyOf(objectStarts, newSize);
+			flags = Arrays.copyOf(flags, newSize);
+		}
+		starts[size] = start;
+		reportStarts[size] = reportStart;
+		objectStarts[size] = objectStart;
+		flags[size] = (byte)((buffered ? BUFFERED : 0)|(definition ? DEFINITION : 0));
+		size++;
+	}
+
+	/**
+	 * Copies statements in range to another index, shifting the values.
+	 */
+	void copyTo(StatementIndex to, int from, int until, int positionDelta, int reportDelta, int objectDelta){
+		for(int i = from; i<until; i++)
+			to.add(starts[i]+positionDelta, reportStarts[i]+reportDelta, objectStarts[i]+objectDelta,
+					isBuffered(i), isDefinition(i));
+	}
+
+	/**
+	 * @return Index of the last statement starting before {@code position}, or {@code -1} if there's none
+	 */
+	int lastStatementBefore(int position){
+		int i = Arrays.binarySearch(starts, 0, size, position);
+		return (i<0 ? -i-1 : i)-1;
+	}
+
+	/**
+	 * @return Index of the statement starting exactly at {@code position}, or {@code -1} if there's none
+	 */
+	int statementAt(int position){
+		int i = Arrays.binarySearch(starts, 0, size, position);
+		return i<0 ? -1 : i;
+	}
+
+	boolean hasDefinitionFrom(int statement){
+		for(int i = statement; i<size; i++)
+			if(isDefinition(i)) return true;
+		return false;
+	}
+}
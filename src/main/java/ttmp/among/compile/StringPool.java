@@ -0,0 +1,70 @@
+package ttmp.among.compile;
+
+/**
+ * Bounded pool of strings, used for sharing instances of literals repeated in a source. Strings are looked up without
+ * creating a new instance first; a string is only created if the pool doesn't have one with the same content.<br>
+ * Each string is placed in a slot determined by its hash. A string mapped to an occupied slot replaces the previous
+ * one, so the pool never holds more than its capacity. Strings longer than the maximum length are not pooled.
+ */
+final class StringPool{
+	private final String[] strings;
+	private final int maxLength;
+
+	/**
+	 * @param capacity  Number of slots; rounded up to a power of 2
+	 * @param maxLength Maximum length of the pooled strings, in codepoints
+	 */
+	StringPool(int capacity, int maxLength){
+		this.strings = new String[capacity<=1 ? 1 : Integer.highestOneBit(capacity-1)<<1];
+		this.maxLength = maxLength;
+	}
+
+	String intern(CharSequence s){
+		int length = s.length();
+		// each codepoint takes at most 2 chars
+		if(length>maxLength&&((length+1)/2>maxLength||Character.codePointCount(s, 0, length)>maxLength))
+			return s.toString();
+		int hash = 0;
+		for(int i = 0; i<length; i++) hash = 31*hash+s.charAt(i);
+		int slot = slot(hash);
+		String pooled = strings[slot];
+		if(pooled!=null&&pooled.hashCode()==hash&&pooled.contentEquals(s)) return pooled;
+		return strings[slot] = s.toString();
+	}
+
+	/**
+	 * @return String identical to {@link Source#substring(int, int) source.substring(start, end)}
+	 */
+	String intern(Source source, int start, int end){
+		if(end-start>maxLength) return source.substring(start, end);
+		int hash = 0, length = 0;
+		for(int i = start; i<end; i++){
+			int c = source.codePointAt(i);
+			if(Character.isBmpCodePoint(c)){
+				hash = 31*hash+c;
+				length++;
+			}else{
+				hash = 31*(31*hash+Character.highSurrogate(c))+Character.lowSurrogate(c);
+				length += 2;
+			}
+		}
+		int slot = slot(hash);
+		String pooled = strings[slot];
+		if(pooled!=null&&pooled.length()==length&&pooled.hashCode()==hash&&contentEquals(pooled, source, start, end))
+			return pooled;
+		return strings[slot] = source.substring(start, end);
+	}
+
+	private int slot(int hash){
+		return (hash^hash>>>16)&(strings.length-1);
+	}
+
+	private static boolean contentEquals(String s, Source source, int start, int end){
+		for(int i = start, j = 0; i<end; i++){
+			int c = source.codePointAt(i);
+			if(s.codePointAt(j)!=c) return false;
+			j += Character.charCount(c);
+		}
+		return true;
+	}
+}
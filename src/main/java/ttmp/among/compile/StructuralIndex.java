@@ -0,0 +1,379 @@
+package ttmp.among.compile;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Positions of structural characters of a source - brackets, quotes, comments and line breaks - collected in a single
+ * pass over the source, with matching pairs resolved.<br>
+ * The index is built without knowledge of tokenization modes, so it is an approximation of the structure seen by
+ * {@link AmongTokenizer}: quotes are assumed to start quoted primitives only at the start of a token (after whitespace,
+ * line breaks, brackets, {@code ,} or {@code :}), and brackets are always assumed to be structural.
+ */
+final class StructuralIndex{
+	static final byte L_BRACE = 0;
+	static final byte R_BRACE = 1;
+	static final byte L_BRACKET = 2;
+	static final byte R_BRACKET = 3;
+	static final byte L_PAREN = 4;
+	static final byte R_PAREN = 5;
+	static final byte QUOTE_START = 6;
+	static final byte QUOTE_END = 7;
+	static final byte COMMENT_START = 8;
+	static final byte COMMENT_END = 9;
+	static final byte BR = 10;
+
+	private static final int NONE = -1;
+
+	/*
+	 * Entries are sorted by position. Pair of each entry is the index of the entry paired with it; closing bracket for
+	 * opening brackets, end for quote/comment starts, and vice versa. Opening brackets closed with a bracket of
+	 * different kind are unpaired, and have the index of the closing bracket in mismatches.
+	 */
+	private int[] positions = new int[64];
+	private byte[] kinds = new byte[64];
+	private int[] pairs = new int[64];
+	private int[] mismatches = new int[64];
+	private int size;
+
+	private StructuralIndex(){}
+
+	static StructuralIndex build(Source source){
+		StructuralIndex index = new StructuralIndex();
+		index.finish(source, index.scan(source, 0, source.totalLength(), INITIAL_STATE));
+		index.resolve();
+		return index;
+	}
+
+	/**
+	 * Builds the index with the source split into chunks, each chunk scanned in parallel on {@code pool}. Sources
+	 * smaller than two chunks, sources not supporting concurrent access, or pools without parallelism available are
+	 * scanned sequentially.<br>
+	 * As the state at the start of each chunk is unknown before previous chunks are scanned, each chunk is scanned
+	 * from every possible starting state at once. Scans reaching the same state at the same position produce the
+	 * same result from that point on, so they are merged into one; after a few codepoints - usually on the first line
+	 * break or whitespace outside quotes - only one or two remain. Results of the chunks are then joined sequentially,
+	 * picking the scan starting from the state the previous chunk ended with. As quotes in the source alternate the state
+	 * of the remaining scans, the total work is about twice the work of a sequential scan.
+	 *
+	 * @param chunkSize Size of each chunk, in codepoints
+	 * @param pool      Pool to scan the chunks on, or {@code null} for the common pool
+	 */
+	static StructuralIndex build(Source source, int chunkSize, @Nullable ForkJoinPool pool){
+		if(pool==null) pool = ForkJoinPool.commonPool();
+		int length = source.totalLength();
+		if(chunkSize<=0||length/2<chunkSize||pool.getParallelism()<2||source.concurrentCopy()==null)
+			return build(source);
+		Chunk[] chunks = new Chunk[(length+chunkSize-1)/chunkSize];
+		for(int i = 0; i<chunks.length; i++)
+			chunks[i] = new Chunk(i*chunkSize, Math.min(length, (i+1)*chunkSize), i==0);
+		pool.invoke(new ScanTask(source, chunks, 0, chunks.length));
+
+		StructuralIndex index = new StructuralIndex();
+		int state = INITIAL_STATE;
+		for(Chunk chunk : chunks) state = chunk.appendTo(index, state);
+		index.finish(source, state);
+		index.resolve();
+		return index;
+	}
+
+	/**
+	 * @param position Position of an opening bracket
+	 * @return Position of the closing bracket paired with the opening bracket at {@code position}, or {@code -1} if
+	 * there's no opening bracket at {@code position} or it doesn't have a pair
+	 */
+	int closingBracket(int position){
+		int i = find(position);
+		return i>=0&&isOpeningBracket(kinds[i])&&pairs[i]!=NONE ? positions[pairs[i]] : -1;
+	}
+
+	/**
+	 * @param position Position of an opening bracket
+	 * @return Position of the first closing bracket of different kind met while the opening bracket at {@code
+	 * position} was the innermost one, or {@code -1} if there's no such bracket
+	 */
+	int mismatchedBracket(int position){
+		int i = find(position);
+		return i>=0&&isOpeningBracket(kinds[i])&&mismatches[i]!=NONE ? positions[mismatches[i]] : -1;
+	}
+
+	private int find(int position){
+		int i = Arrays.binarySearch(positions, 0, size, position);
+		return i>=0 ? i : -1;
+	}
+
+	private static boolean isOpeningBracket(byte kind){
+		return kind==L_BRACE||kind==L_BRACKET||kind==L_PAREN;
+	}
+
+	/*
+	 * The scanner is a state machine advancing one codepoint at a time. State is composed of the mode, whether the
+	 * next codepoint starts a token, and whether the next codepoint is skipped (escaped characters, or the second
+	 * character of two-character sequences). Quote and comment starts are immediately followed by their ends in the
+	 * entries, and brackets are paired after the scan.
+	 */
+	private static final int NORMAL = 0;
+	private static final int SINGLE_QUOTE = 1;
+	private static final int DOUBLE_QUOTE = 2;
+	private static final int LINE_COMMENT = 3;
+	private static final int BLOCK_COMMENT = 4;
+	private static final int MODE = 7;
+	private static final int TOKEN_START = 8;
+	private static final int SKIP = 16;
+
+	private static final int STATES = 32;
+	private static final int INITIAL_STATE = NORMAL|TOKEN_START;
+
+	private static boolean isValidState(int state){
+		switch(state&MODE){
+			case NORMAL: case LINE_COMMENT: case BLOCK_COMMENT: return true;
+			case SINGLE_QUOTE: case DOUBLE_QUOTE: return (state&TOKEN_START)==0;
+			default: return false;
+		}
+	}
+
+	/**
+	 * Scans codepoints from {@code start} (inclusive) to {@code end} (exclusive), starting with {@code state}.
+	 *
+	 * @return State after the scan
+	 */
+	private int scan(Source source, int start, int end, int state){
+		for(int i = start; i<end; i++)
+			state = step(source, i, source.codePointAt(i), state);
+		return state;
+	}
+
+	private void finish(Source source, int state){
+		// line comment at the end of the file
+		if((state&MODE)==LINE_COMMENT) add(COMMENT_END, source.totalLength()-1);
+	}
+
+	private int step(Source source, int i, int c, int state){
+		if((state&SKIP)!=0) return state&~SKIP;
+		switch(state&MODE){
+			case NORMAL:
+				switch(c){
+					case '\\':
+						// line continuation, or escaped character
+						return source.codePointAt(i+1)=='\n' ? state|SKIP : NORMAL|SKIP;
+					case '\n':
+						add(BR, i);
+						return NORMAL|TOKEN_START;
+					case ' ': case '\t': case ',': case ':':
+						return NORMAL|TOKEN_START;
+					case '/':{
+						int next = source.codePointAt(i+1);
+						if(next=='/'){
+							add(COMMENT_START, i);
+							return LINE_COMMENT|state&TOKEN_START|SKIP;
+						}else if(next=='*'){
+							add(COMMENT_START, i);
+							return BLOCK_COMMENT|state&TOKEN_START|SKIP;
+						}
+						return NORMAL;
+					}
+					case '\'': case '"':
+						if((state&TOKEN_START)==0) return state;
+						add(QUOTE_START, i);
+						return c=='\'' ? SINGLE_QUOTE : DOUBLE_QUOTE;
+					case '{': add(L_BRACE, i); return NORMAL|TOKEN_START;
+					case '[': add(L_BRACKET, i); return NORMAL|TOKEN_START;
+					case '(': add(L_PAREN, i); return NORMAL|TOKEN_START;
+					case '}': add(R_BRACE, i); return NORMAL|TOKEN_START;
+					case ']': add(R_BRACKET, i); return NORMAL|TOKEN_START;
+					case ')': add(R_PAREN, i); return NORMAL|TOKEN_START;
+					default: return NORMAL;
+				}
+			case SINGLE_QUOTE: case DOUBLE_QUOTE:
+				if(c=='\\') return state|SKIP;
+				if(c==((state&MODE)==SINGLE_QUOTE ? '\'' : '"')){
+					add(QUOTE_END, i);
+					return NORMAL|TOKEN_START;
+				}
+				return state;
+			case LINE_COMMENT:
+				// same as the comment handling of AmongTokenizer; line comments can be continued to the next line with
+				// trailing backslash
+				if(c=='\n'){
+					add(COMMENT_END, i-1);
+					return step(source, i, c, NORMAL|state&TOKEN_START);
+				}
+				return c=='\\'&&source.codePointAt(i+1)=='\n' ? state|SKIP : state;
+			case BLOCK_COMMENT:
+				// same as the comment handling of AmongTokenizer; a comment is terminated at the first *, even if it's
+				// not followed by /
+				if(c!='*') return state;
+				if(source.codePointAt(i+1)=='/'){
+					add(COMMENT_END, i+1);
+					return NORMAL|state&TOKEN_START|SKIP;
+				}
+				add(COMMENT_END, i-1);
+				return step(source, i, c, NORMAL|state&TOKEN_START);
+			default:
+				throw new IllegalStateException("Invalid state "+state);
+		}
+	}
+
+	/**
+	 * Pairs quote and comment starts with their ends, and brackets with each other.
+	 */
+	private void resolve(){
+		int[] stack = new int[16];
+		int depth = 0;
+		for(int e = 0; e<size; e++){
+			byte kind = kinds[e];
+			switch(kind){
+				case QUOTE_START: case COMMENT_START:
+					if(e+1<size&&kinds[e+1]==kind+1) pair(e, ++e);
+					break;
+				case L_BRACE: case L_BRACKET: case L_PAREN:
+					if(depth==stack.length) stack = Arrays.copyOf(stack, depth*2);
+					stack[depth++] = e;
+					break;
+				case R_BRACE: case R_BRACKET: case R_PAREN:{
+					if(depth==0) break;
+					int top = stack[depth-1];
+					if(kinds[top]!=kind-1){
+						if(mismatches[top]==NONE) mismatches[top] = e;
+						// close the innermost opening bracket of the same kind, leaving the ones above it unpaired
+						int d = depth-1;
+						while(d>=0&&kinds[stack[d]]!=kind-1) d--;
+						if(d<0) break; // stray closing bracket
+						for(int j = d+1; j<depth; j++)
+							if(mismatches[stack[j]]==NONE) mismatches[stack[j]] = e;
+						depth = d+1;
+					}
+					pair(stack[--depth], e);
+					break;
+				}
+			}
+		}
+	}
+
+	private void append(StructuralIndex index, int from, int to){
+		for(int e = from; e<to; e++) add(index.kinds[e], index.positions[e]);
+	}
+
+	private int add(byte kind, int position){
+		if(size==positions.length){
+			int capacity = size*2;
+			positions = Arrays.copyOf(positions, capacity);
+			kinds = Arrays.copyOf(kinds, capacity);
+			pairs = Arrays.copyOf(pairs, capacity);
+			mismatches = Arrays.copyOf(mismatches, capacity);
+		}
+		positions[size] = position;
+		kinds[size] = kind;
+		pairs[size] = NONE;
+		mismatches[size] = NONE;
+		return size++;
+	}
+
+	private void pair(int a, int b){
+		pairs[a] = b;
+		pairs[b] = a;
+	}
+
+	private static final class ScanTask extends RecursiveAction{
+		private final Source source;
+		private final Chunk[] chunks;
+		private final int from, to;
+
+		ScanTask(Source source, Chunk[] chunks, int from, int to){
+			this.source = source;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override protected void compute(){
+			if(to-from>1){
+				int mid = (from+to)>>>1;
+				invokeAll(new ScanTask(source, chunks, from, mid), new ScanTask(source, chunks, mid, to));
+			}else chunks[from].scan(Objects.requireNonNull(source.concurrentCopy()));
+		}
+	}
+
+	/**
+	 * Portion of the source scanned from each possible starting state.
+	 */
+	private static final class Chunk{
+		private final int start, end;
+		/**
+		 * Index of the track for each starting state. Unused states are mapped to {@code -1}.
+		 */
+		private final int[] trackOfState = new int[STATES];
+		private final List<Track> tracks = new ArrayList<>();
+
+		Chunk(int start, int end, boolean first){
+			this.start = start;
+			this.end = end;
+			Arrays.fill(trackOfState, -1);
+			for(int state = 0; state<STATES; state++){
+				if(first ? state!=INITIAL_STATE : !isValidState(state)) continue;
+				trackOfState[state] = tracks.size();
+				tracks.add(new Track(state));
+			}
+		}
+
+		void scan(Source source){
+			Track[] live = tracks.toArray(new Track[0]);
+			int liveSize = live.length;
+			for(int i = start; i<end; i++){
+				int c = source.codePointAt(i);
+				for(int t = 0; t<liveSize; t++){
+					Track track = live[t];
+					track.state = track.index.step(source, i, c, track.state);
+				}
+				for(int t = liveSize-1; t>0; t--){
+					Track track = live[t];
+					for(int t2 = 0; t2<t; t2++){
+						Track target = live[t2];
+						if(target.state!=track.state) continue;
+						track.mergedInto = target;
+						track.mergePoint = target.index.size;
+						live[t] = live[--liveSize];
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Appends entries of the track starting with {@code state} to the index.
+		 *
+		 * @return State at the end of the chunk
+		 */
+		int appendTo(StructuralIndex index, int state){
+			Track track = tracks.get(trackOfState[state]);
+			int from = 0;
+			while(true){
+				index.append(track.index, from, track.index.size);
+				if(track.mergedInto==null) return track.state;
+				from = track.mergePoint;
+				track = track.mergedInto;
+			}
+		}
+	}
+
+	private static final class Track{
+		private final StructuralIndex index = new StructuralIndex();
+		private int state;
+		/**
+		 * Track this track was merged into; entries after the merge are the ones in {@code mergedInto}, starting from
+		 * {@code mergePoint}.
+		 */
+		@Nullable private Track mergedInto;
+		private int mergePoint;
+
+		Track(int state){
+			this.state = state;
+		}
+	}
+}
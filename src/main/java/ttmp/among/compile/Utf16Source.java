@@ -0,0 +1,101 @@
+package ttmp.among.compile;
+
+import java.util.Arrays;
+
+/**
+ * Source stored as UTF-16 char array. Positions of every supplementary codepoint (the ones that take two chars) are
+ * recorded to translate codepoint positions into char indices; sources without any supplementary codepoints map
+ * positions directly into the array.
+ */
+final class Utf16Source extends Source{
+	/**
+	 * Maximum distance walked forward from last accessed position before falling back to binary search.
+	 */
+	private static final int MAX_WALK = 32;
+
+	private final char[] chars;
+	private final int length;
+	/**
+	 * Codepoint positions of each supplementary codepoint, in ascending order.
+	 */
+	private final int[] supplementary;
+	private final int[] lineStarts;
+
+	private int cursorPosition;
+	/**
+	 * Number of supplementary codepoints before {@link Utf16Source#cursorPosition}.
+	 */
+	private int cursorCount;
+
+	Utf16Source(char[] chars, int length, int[] supplementary, int[] lineStarts, boolean retainRawSource){
+		super(retainRawSource);
+		this.chars = chars;
+		this.length = length;
+		this.supplementary = supplementary;
+		this.lineStarts = lineStarts;
+	}
+
+	@Override public int totalLength(){
+		return length;
+	}
+	@Override public int totalLines(){
+		return lineStarts.length;
+	}
+
+	@Override public int codePointAt(int position){
+		if(position>=length) return EOF;
+		int i = charIndex(position);
+		char c = chars[i];
+		if(Character.isHighSurrogate(c)&&i+1<chars.length){
+			char c2 = chars[i+1];
+			if(Character.isLowSurrogate(c2)) return Character.toCodePoint(c, c2);
+		}
+		return c;
+	}
+
+	@Override Source concurrentCopy(){
+		// only the cursor is mutable
+		return new Utf16Source(chars, length, supplementary, lineStarts, false);
+	}
+
+	@Override int indexOf(int position, int c1, int c2, int c3){
+		if(position>=length) return position;
+		for(int i = charIndex(position); position<length; position++){
+			char c = chars[i++];
+			if(c==c1||c==c2||c==c3) break;
+			if(Character.isHighSurrogate(c)&&i<chars.length&&Character.isLowSurrogate(chars[i])) i++;
+		}
+		return position;
+	}
+
+	@Override public boolean isInBounds(int position){
+		return position>=0&&position<length;
+	}
+
+	@Override public String substring(int start, int end){
+		if(start<0||end>length||start>end)
+			throw new IndexOutOfBoundsException("start: "+start+", end: "+end+", length: "+length);
+		int startIndex = charIndex(start);
+		return new String(chars, startIndex, charIndex(end)-startIndex);
+	}
+
+	@Override public int lineStart(int line){
+		return lineStarts[line];
+	}
+
+	private int charIndex(int position){
+		if(position<0) throw new ArrayIndexOutOfBoundsException(position);
+		if(supplementary.length==0) return position;
+		int count;
+		if(position>=cursorPosition&&position-cursorPosition<=MAX_WALK){
+			count = cursorCount;
+			while(count<supplementary.length&&supplementary[count]<position) count++;
+		}else{
+			count = Arrays.binarySearch(supplementary, position);
+			if(count<0) count = -count-1;
+		}
+		cursorPosition = position;
+		cursorCount = count;
+		return position+count;
+	}
+}
@@ -6,6 +6,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
@@ -17,24 +18,42 @@ import java.util.stream.Stream;
 
 import static ttmp.among.definition.OperatorType.BINARY;
 import static ttmp.among.definition.OperatorType.POSTFIX;
+import static ttmp.among.definition.OperatorType.PREFIX;
 
 /**
  * Collection of {@link OperatorDefinition}s organized in various format to ensure faster access during compilation.<br>
  * Just to be clear, absolutely everything in this class is not thread safe.
  */
 public final class OperatorRegistry{
+	private static final Comparator<NameGroup> LONGEST_FIRST = (o1, o2) -> {
+		int c = Integer.compare(o2.name.length(), o1.name.length());
+		return c!=0 ? c : o1.name.compareTo(o2.name);
+	};
+
 	private final Map<String, NameGroup> operators = new HashMap<>();
 	private final Map<Double, PriorityGroup> priorityGroup = new HashMap<>();
 	@Nullable private List<PriorityGroup> priorityGroupList;
+	/**
+	 * Precedence of operators by their name, built on first access after the operators are changed
+	 */
+	@Nullable private Map<String, Precedence> precedenceTable;
 
 	/**
-	 * Starting codepoint to set of name groups, sorted by name length in descending order (for maximal munch rule)
+	 * Trie of operator names, built on first access after the names are changed
+	 */
+	@Nullable private OperatorTrie operatorTrie;
+	/**
+	 * Trie of keyword names, built on first access after the names are changed
+	 */
+	@Nullable private OperatorTrie keywordTrie;
+	/**
+	 * Operators by their first codepoint, built on first access after the names are changed
 	 */
-	private final Map<Integer, Set<NameGroup>> operatorByStartingCodepoint = new HashMap<>();
+	@Nullable private Map<Integer, Set<NameGroup>> operatorsByCodePoint;
 	/**
-	 * Starting codepoint to set of name groups, sorted by name length in descending order (for maximal munch rule)
+	 * Keywords by their first codepoint, built on first access after the names are changed
 	 */
-	private final Map<Integer, Set<NameGroup>> keywordByStartingCodepoint = new HashMap<>();
+	@Nullable private Map<Integer, Set<NameGroup>> keywordsByCodePoint;
 
 	public OperatorRegistry(){}
 	public OperatorRegistry(OperatorRegistry copyFrom){
@@ -104,17 +123,7 @@ public final class OperatorRegistry{
 		NameGroup o = operators.get(definition.name());
 		if(o==null){
 			operators.put(definition.name(), o = new NameGroup(definition));
-			if(!definition.name().isEmpty())
-				(definition.isKeyword() ?
-						keywordByStartingCodepoint :
-						operatorByStartingCodepoint)
-						.computeIfAbsent(o.codePointAt(0), i -> new TreeSet<>((o1, o2) -> {
-							int c = Integer.compare(o2.name.length(), o1.name.length());
-							if(c!=0) return c;
-							c = o1.name.compareTo(o2.name);
-							return c;
-						}))
-						.add(o);
+			invalidateTrie(definition.isKeyword());
 		}else{
 			RegistrationResult result = o.add(definition);
 			if(!result.isSuccess()) return result;
@@ -127,14 +136,7 @@ public final class OperatorRegistry{
 		NameGroup op = operators.get(operatorName);
 		if(op!=null&&op.isKeyword==keyword){
 			operators.remove(operatorName);
-			if(!operatorName.isEmpty()){
-				Map<Integer, Set<NameGroup>> m = keyword ?
-						keywordByStartingCodepoint :
-						operatorByStartingCodepoint;
-				Set<NameGroup> operators = m.get(op.codePointAt(0));
-				operators.remove(op);
-				if(operators.isEmpty()) m.remove(op.codePointAt(0));
-			}
+			invalidateTrie(keyword);
 			for(OperatorDefinition def : op.defByType.values()){
 				removeFromParsingOrder(def);
 			}
@@ -148,6 +150,21 @@ public final class OperatorRegistry{
 		operators.clear();
 		priorityGroup.clear();
 		priorityGroupList = null;
+		precedenceTable = null;
+		operatorTrie = null;
+		keywordTrie = null;
+		operatorsByCodePoint = null;
+		keywordsByCodePoint = null;
+	}
+
+	private void invalidateTrie(boolean keyword){
+		if(keyword){
+			keywordTrie = null;
+			keywordsByCodePoint = null;
+		}else{
+			operatorTrie = null;
+			operatorsByCodePoint = null;
+		}
 	}
 
 	private boolean isPriorityOccupiedByWrongType(OperatorDefinition definition){
@@ -164,12 +181,14 @@ public final class OperatorRegistry{
 		if(g==null) this.priorityGroup.put(definition.priority(), new PriorityGroup(definition));
 		else g.add(definition);
 		priorityGroupList = null;
+		precedenceTable = null;
 	}
 
 	private void removeFromParsingOrder(OperatorDefinition def){
 		PriorityGroup g = this.priorityGroup.get(def.priority());
 		if(g!=null){
 			g.remove(def);
+			precedenceTable = null;
 			if(g.isEmpty()){
 				this.priorityGroup.remove(def.priority());
 				this.priorityGroupList = null;
@@ -177,14 +196,55 @@ public final class OperatorRegistry{
 		}
 	}
 
+	/**
+	 * @return Set of operators starting with the codepoint, sorted by name length in descending order
+	 */
 	public Set<NameGroup> getOperators(int startingCodePoint){
-		Set<NameGroup> operators = operatorByStartingCodepoint.get(startingCodePoint);
-		return operators==null ? Collections.emptySet() : Collections.unmodifiableSet(operators);
+		return getNameGroups(startingCodePoint, false);
 	}
 
+	/**
+	 * @return Set of keywords starting with the codepoint, sorted by name length in descending order
+	 */
 	public Set<NameGroup> getKeywords(int startingCodePoint){
-		Set<NameGroup> keywords = keywordByStartingCodepoint.get(startingCodePoint);
-		return keywords==null ? Collections.emptySet() : Collections.unmodifiableSet(keywords);
+		return getNameGroups(startingCodePoint, true);
+	}
+
+	private Set<NameGroup> getNameGroups(int startingCodePoint, boolean keyword){
+		Map<Integer, Set<NameGroup>> map = keyword ? keywordsByCodePoint : operatorsByCodePoint;
+		if(map==null){
+			map = new HashMap<>();
+			for(NameGroup g : operators.values())
+				if(g.isKeyword==keyword&&g.codePointLength()>0)
+					map.computeIfAbsent(g.codePointAt(0), c -> new TreeSet<>(LONGEST_FIRST)).add(g);
+			map.replaceAll((c, set) -> Collections.unmodifiableSet(set));
+			if(keyword) keywordsByCodePoint = map;
+			else operatorsByCodePoint = map;
+		}
+		return map.getOrDefault(startingCodePoint, Collections.emptySet());
+	}
+
+	/**
+	 * @return Trie of all operator names, for matching the longest operator in a single scan
+	 */
+	public OperatorTrie operatorTrie(){
+		if(operatorTrie==null) operatorTrie = buildTrie(false);
+		return operatorTrie;
+	}
+
+	/**
+	 * @return Trie of all keyword names, for matching the longest keyword in a single scan
+	 */
+	public OperatorTrie keywordTrie(){
+		if(keywordTrie==null) keywordTrie = buildTrie(true);
+		return keywordTrie;
+	}
+
+	private OperatorTrie buildTrie(boolean keyword){
+		List<NameGroup> list = new ArrayList<>();
+		for(NameGroup g : operators.values())
+			if(g.isKeyword==keyword) list.add(g);
+		return OperatorTrie.build(list);
 	}
 
 	public List<PriorityGroup> priorityGroup(){
@@ -196,6 +256,23 @@ public final class OperatorRegistry{
 		return priorityGroupList;
 	}
 
+	/**
+	 * @return Precedence of operators or keywords with the name, or {@code null} if there's none
+	 */
+	@Nullable public Precedence precedence(String name){
+		if(precedenceTable==null){
+			Map<String, Precedence> table = new HashMap<>();
+			List<PriorityGroup> groups = priorityGroup();
+			for(int i = 0; i<groups.size(); i++){
+				PriorityGroup g = groups.get(i);
+				for(OperatorDefinition def : g.operators.values())
+					table.computeIfAbsent(def.name(), n -> new Precedence()).set(def, i, g.rightAssociative);
+			}
+			precedenceTable = table;
+		}
+		return precedenceTable.get(name);
+	}
+
 	/**
 	 * @return Stream of all operators and keywords in registry.
 	 */
@@ -329,6 +406,61 @@ public final class OperatorRegistry{
 		}
 	}
 
+	/**
+	 * Operators sharing the same name, with the position of their priority group in {@link
+	 * OperatorRegistry#priorityGroup()} as their level. Used in parsing.<br>
+	 * A name has at most one leading operator (prefix) and at most one trailing operator (binary or postfix).
+	 */
+	public static final class Precedence{
+		@Nullable private OperatorDefinition leading;
+		private int leadingLevel = -1;
+		@Nullable private OperatorDefinition trailing;
+		private int trailingLevel = -1;
+		private boolean rightAssociative;
+
+		private void set(OperatorDefinition def, int level, boolean rightAssociative){
+			if(def.type()==PREFIX){
+				this.leading = def;
+				this.leadingLevel = level;
+			}else{
+				this.trailing = def;
+				this.trailingLevel = level;
+				this.rightAssociative = rightAssociative;
+			}
+		}
+
+		/**
+		 * @return Prefix operator with the name, or {@code null} if there's none
+		 */
+		@Nullable public OperatorDefinition leading(){
+			return leading;
+		}
+		/**
+		 * @return Level of the prefix operator, or {@code -1} if there's none
+		 */
+		public int leadingLevel(){
+			return leadingLevel;
+		}
+		/**
+		 * @return Binary or postfix operator with the name, or {@code null} if there's none
+		 */
+		@Nullable public OperatorDefinition trailing(){
+			return trailing;
+		}
+		/**
+		 * @return Level of the binary or postfix operator, or {@code -1} if there's none
+		 */
+		public int trailingLevel(){
+			return trailingLevel;
+		}
+		/**
+		 * @return Whether the binary operator is right-associative
+		 */
+		public boolean isRightAssociative(){
+			return rightAssociative;
+		}
+	}
+
 	/**
 	 * Operators grouped by their priority. Used in parsing.
 	 */
@@ -0,0 +1,117 @@
+package ttmp.among.definition;
+
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.definition.OperatorRegistry.NameGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of operator or keyword names, used for matching operators in tokenization. Names are matched one
+ * codepoint at a time from the root node with {@link OperatorTrie#next(int, int)}; the longest name matched is the last
+ * node visited with {@link OperatorTrie#accept(int) accepting name}.<br>
+ * Nodes are identified with integers, the root being {@code 0}. Edges of each node are sorted by codepoint, stored in
+ * flat arrays.
+ *
+ * @see OperatorRegistry#operatorTrie()
+ * @see OperatorRegistry#keywordTrie()
+ */
+public final class OperatorTrie{
+	public static final int ROOT = 0;
+	public static final int NO_NODE = -1;
+
+	static final OperatorTrie EMPTY = new OperatorTrie(new int[]{0, 0}, new int[0], new int[0], new NameGroup[1]);
+
+	/**
+	 * Edges of node {@code n} are placed from {@code edgeStart[n]} (inclusive) to {@code edgeStart[n+1]} (exclusive).
+	 */
+	private final int[] edgeStart;
+	private final int[] edgeCodePoints;
+	private final int[] edgeTargets;
+	private final NameGroup[] accepts;
+
+	private OperatorTrie(int[] edgeStart, int[] edgeCodePoints, int[] edgeTargets, NameGroup[] accepts){
+		this.edgeStart = edgeStart;
+		this.edgeCodePoints = edgeCodePoints;
+		this.edgeTargets = edgeTargets;
+		this.accepts = accepts;
+	}
+
+	/**
+	 * @param node      Current node
+	 * @param codePoint Next codepoint
+	 * @return Node reached from {@code node} with {@code codePoint}, or {@link OperatorTrie#NO_NODE} if there's none
+	 */
+	public int next(int node, int codePoint){
+		int low = edgeStart[node], high = edgeStart[node+1]-1;
+		while(low<=high){
+			int mid = (low+high)>>>1;
+			int c = edgeCodePoints[mid];
+			if(c<codePoint) low = mid+1;
+			else if(c>codePoint) high = mid-1;
+			else return edgeTargets[mid];
+		}
+		return NO_NODE;
+	}
+
+	/**
+	 * @param node Node
+	 * @return Name group with name spelled by the path from root to {@code node}, or {@code null} if there's none
+	 */
+	@Nullable public NameGroup accept(int node){
+		return accepts[node];
+	}
+
+	public boolean isEmpty(){
+		return edgeCodePoints.length==0;
+	}
+
+	static OperatorTrie build(Iterable<NameGroup> groups){
+		Node root = new Node();
+		for(NameGroup g : groups){
+			if(g.codePointLength()==0) continue;
+			Node n = root;
+			for(int i = 0; i<g.codePointLength(); i++)
+				n = n.children.computeIfAbsent(g.codePointAt(i), c -> new Node());
+			n.accept = g;
+		}
+		if(root.children.isEmpty()) return EMPTY;
+
+		// number nodes in breadth-first order, so edges of each node are contiguous
+		List<Node> nodes = new ArrayList<>();
+		nodes.add(root);
+		int edges = 0;
+		for(int i = 0; i<nodes.size(); i++){
+			Node n = nodes.get(i);
+			edges += n.children.size();
+			nodes.addAll(n.children.values());
+		}
+		for(int i = 0; i<nodes.size(); i++) nodes.get(i).index = i;
+
+		int[] edgeStart = new int[nodes.size()+1];
+		int[] edgeCodePoints = new int[edges];
+		int[] edgeTargets = new int[edges];
+		NameGroup[] accepts = new NameGroup[nodes.size()];
+		int e = 0;
+		for(int i = 0; i<nodes.size(); i++){
+			Node n = nodes.get(i);
+			edgeStart[i] = e;
+			accepts[i] = n.accept;
+			for(Map.Entry<Integer, Node> entry : n.children.entrySet()){
+				edgeCodePoints[e] = entry.getKey();
+				edgeTargets[e] = entry.getValue().index;
+				e++;
+			}
+		}
+		edgeStart[nodes.size()] = e;
+		return new OperatorTrie(edgeStart, edgeCodePoints, edgeTargets, accepts);
+	}
+
+	private static final class Node{
+		private final Map<Integer, Node> children = new TreeMap<>();
+		@Nullable private NameGroup accept;
+		private int index;
+	}
+}
@@ -18,6 +18,7 @@ import ttmp.among.obj.AmongObject;
 import ttmp.among.util.RootAndDefinition;
 
 import java.util.Map;
+import java.util.OptionalInt;
 
 /**
  * Provider for "native files" that can be imported from all among scripts. This object is automatically registered on
@@ -160,14 +161,13 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						return a;
 					}else{
 						AmongList l = args[0].asList();
-						try{
-							int i = args[1].asPrimitive().getIntValue();
+						OptionalInt index = args[1].asPrimitive().tryIntValue();
+						if(index.isPresent()){
+							int i = index.getAsInt();
 							if(i>=0&&i<l.size()) return l.get(i);
 							if(reportHandler!=null)
 								reportHandler.accept(ReportType.ERROR, "Index out of range ("+i+", size = "+l.size()+")");
-						}catch(NumberFormatException ex){
-							if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
-						}
+						}else if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
 					}
 					return null;
 				}));
@@ -180,14 +180,15 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						String key = args[1].asPrimitive().getValue();
 						Among a = args[0].asObj().getProperty(key);
 						return a!=null ? a : args[2];
-					}else try{
-						int i = args[1].asPrimitive().getIntValue();
-						AmongList l = args[0].asList();
-						return i>=0&&i<l.size() ? l.get(i) : args[2];
-					}catch(NumberFormatException ex){
+					}
+					OptionalInt index = args[1].asPrimitive().tryIntValue();
+					if(!index.isPresent()){
 						if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
 						return null;
 					}
+					int i = index.getAsInt();
+					AmongList l = args[0].asList();
+					return i>=0&&i<l.size() ? l.get(i) : args[2];
 				}));
 		definition.macros().add(Macro.builder("add", MacroType.OPERATION_FN)
 				.param("value")
@@ -206,8 +207,10 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						AmongObject o = args[0].asObj().copy();
 						o.setProperty(args[1].asPrimitive().getValue(), args[2]);
 						return o;
-					}else try{
-						int i = args[1].asPrimitive().getIntValue();
+					}
+					OptionalInt index = args[1].asPrimitive().tryIntValue();
+					if(index.isPresent()){
+						int i = index.getAsInt();
 						if(i>=0&&i<args[0].asList().size()){
 							AmongList l = args[0].asList().copy();
 							l.set(i, args[2]);
@@ -215,9 +218,7 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						}
 						if(reportHandler!=null)
 							reportHandler.accept(ReportType.ERROR, "Index out of range ("+i+", size = "+args[0].asList().size()+")");
-					}catch(NumberFormatException ex){
-						if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
-					}
+					}else if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
 					return null;
 				}));
 		definition.macros().add(Macro.builder("remove", MacroType.OPERATION_FN)
@@ -230,8 +231,10 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						AmongObject o = args[0].asObj().copy();
 						o.removeProperty(key);
 						return o;
-					}else try{
-						int i = args[1].asPrimitive().getIntValue();
+					}
+					OptionalInt index = args[1].asPrimitive().tryIntValue();
+					if(index.isPresent()){
+						int i = index.getAsInt();
 						if(i>=0&&i<args[0].asList().size()){
 							AmongList l = args[0].asList().copy();
 							l.removeAt(i);
@@ -239,9 +242,7 @@ public final class DefaultInstanceProvider implements Provider<RootAndDefinition
 						}
 						if(reportHandler!=null)
 							reportHandler.accept(ReportType.ERROR, "Index out of range ("+i+", size = "+args[0].asList().size()+")");
-					}catch(NumberFormatException ex){
-						if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
-					}
+					}else if(reportHandler!=null) reportHandler.accept(ReportType.ERROR, "Expected int");
 					return null;
 				}));
 		return definition;
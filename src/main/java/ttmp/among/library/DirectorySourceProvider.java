@@ -0,0 +1,114 @@
+package ttmp.among.library;
+
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.compile.Source;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Source provider reading script files under a directory. Path {@code foo/bar} is resolved to file {@code
+ * <directory>/foo/bar.among}.<br>
+ * Files can be read ahead of time in parallel with {@link DirectorySourceProvider#preload(int, long)}; sources
+ * preloaded are handed out from memory on the first resolution, and released afterwards. Files not preloaded are read
+ * on resolution as usual.
+ */
+public final class DirectorySourceProvider implements Provider<Source>{
+	private final Path directory;
+	private final Map<String, Source> preloaded = new ConcurrentHashMap<>();
+
+	public DirectorySourceProvider(Path directory){
+		this.directory = directory.toAbsolutePath().normalize();
+	}
+
+	public Path directory(){
+		return directory;
+	}
+
+	/**
+	 * Reads every script file under the directory into memory, using {@code parallelism} threads. Files are read in
+	 * order of their path until total size of the files reaches {@code maxBytes}; files exceeding the cap are skipped
+	 * and read on resolution instead. Files failed to read are also skipped, leaving the error to be reported on
+	 * resolution.
+	 *
+	 * @param parallelism Number of threads reading the files
+	 * @param maxBytes    Maximum total size of the files to preload, in bytes
+	 * @return Number of files preloaded
+	 * @throws IOException              If an I/O error occurs while searching the directory
+	 * @throws IllegalArgumentException If {@code parallelism < 1}
+	 */
+	public int preload(int parallelism, long maxBytes) throws IOException{
+		if(parallelism<1) throw new IllegalArgumentException("parallelism < 1");
+		List<Path> files;
+		try(Stream<Path> stream = Files.walk(directory)){
+			files = stream.filter(f -> Files.isRegularFile(f)&&f.getFileName().toString().endsWith(IndexedSourceProvider.EXTENSION))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread t = new Thread(r, "Among source preload");
+			t.setDaemon(true);
+			return t;
+		});
+		try{
+			List<Future<Boolean>> futures = new ArrayList<>();
+			long size = 0;
+			for(Path file : files){
+				long fileSize = Files.size(file);
+				if(size+fileSize>maxBytes) continue;
+				size += fileSize;
+				futures.add(executor.submit(() -> {
+					preloaded.put(toPath(file), Source.of(Files.readAllBytes(file), StandardCharsets.UTF_8));
+					return true;
+				}));
+			}
+			int count = 0;
+			for(Future<Boolean> f : futures){
+				try{
+					f.get();
+					count++;
+				}catch(ExecutionException ignored){
+					// reported on resolution
+				}
+			}
+			return count;
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while preloading sources", ex);
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return Number of sources preloaded and not yet resolved
+	 */
+	public int preloadedSize(){
+		return preloaded.size();
+	}
+
+	@Nullable @Override public Source resolve(String path) throws IOException{
+		Source source = preloaded.remove(path);
+		if(source!=null) return source;
+		Path file = directory.resolve(path+IndexedSourceProvider.EXTENSION).normalize();
+		if(!file.startsWith(directory)||!Files.isRegularFile(file)) return null;
+		return Source.of(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	private String toPath(Path file){
+		String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+		return name.substring(0, name.length()-IndexedSourceProvider.EXTENSION.length());
+	}
+}
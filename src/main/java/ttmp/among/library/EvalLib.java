@@ -2,10 +2,10 @@ package ttmp.among.library;
 
 import org.jetbrains.annotations.Nullable;
 import ttmp.among.compile.ReportType;
-import ttmp.among.exception.Sussy;
 import ttmp.among.obj.Among;
 import ttmp.among.obj.AmongList;
 
+import java.util.OptionalDouble;
 import java.util.function.BiConsumer;
 
 public final class EvalLib{
@@ -141,15 +141,16 @@ public final class EvalLib{
 	}
 
 	@Nullable public static Boolean toBool(Among among){
-		if(among.isPrimitive()) try{
-			return among.asPrimitive().getBoolValue();
-		}catch(Sussy ignored){}
+		if(among.isPrimitive()){
+			String value = among.asPrimitive().getValue();
+			if(value.equalsIgnoreCase("true")) return true;
+			if(value.equalsIgnoreCase("false")) return false;
+		}
 		return null;
 	}
 	@Nullable public static Double toNum(Among among){
-		if(among.isPrimitive()) try{
-			return among.asPrimitive().getDoubleValue();
-		}catch(NumberFormatException ignored){}
-		return null;
+		if(!among.isPrimitive()) return null;
+		OptionalDouble d = among.asPrimitive().tryDoubleValue();
+		return d.isPresent() ? d.getAsDouble() : null;
 	}
 }
@@ -0,0 +1,204 @@
+package ttmp.among.library;
+
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.compile.Source;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Source provider backed by an index of script files inside jar files and directories, usually the classpath.<br>
+ * Every file with {@code .among} extension under the root is indexed once on creation, with its path relative to the
+ * root and extension stripped; for example, {@code <root>/foo/bar.among} is resolved with path {@code foo/bar}. Sources
+ * are read straight from the indexed entries afterwards, without searching the class loader or the jar again.<br>
+ * The provider keeps indexed jar files open until {@link IndexedSourceProvider#close()} is called.
+ */
+public final class IndexedSourceProvider implements Provider<Source>, Closeable{
+	public static final String EXTENSION = ".among";
+
+	/**
+	 * Creates new provider indexing every directory and jar file providing resource directory {@code root} with
+	 * {@code classLoader}. If multiple of them contain the same path, the one found first with the class loader takes
+	 * precedence.<br>
+	 * Only directories on the file system ({@code file:} URLs) and jar files on the file system ({@code jar:file:}
+	 * URLs) can be indexed, as resources of other protocols cannot be listed. Note that jar files without an entry for
+	 * the directory itself are not found by class loaders.
+	 *
+	 * @param classLoader The class loader
+	 * @param root        Path of the resource directory, separated with {@code /}
+	 * @return New provider
+	 * @throws IOException If an I/O error occurs, or the class loader provides the directory with URL of unsupported
+	 *                     protocol
+	 */
+	public static IndexedSourceProvider ofClassPath(ClassLoader classLoader, String root) throws IOException{
+		root = normalizeRoot(root);
+		IndexedSourceProvider provider = new IndexedSourceProvider();
+		try{
+			for(Enumeration<URL> e = classLoader.getResources(root); e.hasMoreElements(); ){
+				URL url = e.nextElement();
+				switch(url.getProtocol()){
+					case "file":
+						provider.indexDirectory(Paths.get(url.toURI()));
+						break;
+					case "jar":
+						JarURLConnection connection = (JarURLConnection)url.openConnection();
+						URL jarFile = connection.getJarFileURL();
+						if(!jarFile.getProtocol().equals("file")) throw unsupportedProtocol(url);
+						provider.indexJar(Paths.get(jarFile.toURI()), root);
+						break;
+					default:
+						throw unsupportedProtocol(url);
+				}
+			}
+		}catch(URISyntaxException ex){
+			provider.close();
+			throw new IOException(ex);
+		}catch(IOException|RuntimeException ex){
+			provider.close();
+			throw ex;
+		}
+		return provider;
+	}
+
+	/**
+	 * Creates new provider indexing entries under directory {@code root} of the jar file.
+	 *
+	 * @param jar  Path of the jar file
+	 * @param root Path of the directory inside the jar, separated with {@code /}. Empty string indexes the whole jar.
+	 * @return New provider
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static IndexedSourceProvider ofJar(Path jar, String root) throws IOException{
+		IndexedSourceProvider provider = new IndexedSourceProvider();
+		try{
+			provider.indexJar(jar, normalizeRoot(root));
+		}catch(IOException|RuntimeException ex){
+			provider.close();
+			throw ex;
+		}
+		return provider;
+	}
+
+	/**
+	 * Creates new provider indexing files under the directory.
+	 *
+	 * @param directory Path of the directory
+	 * @return New provider
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static IndexedSourceProvider ofDirectory(Path directory) throws IOException{
+		IndexedSourceProvider provider = new IndexedSourceProvider();
+		provider.indexDirectory(directory);
+		return provider;
+	}
+
+	private static IOException unsupportedProtocol(URL url){
+		return new IOException("Cannot index resource directory '"+url+"': only file: and jar:file: URLs are supported");
+	}
+
+	private static String normalizeRoot(String root){
+		int start = 0, end = root.length();
+		while(start<end&&root.charAt(start)=='/') start++;
+		while(end>start&&root.charAt(end-1)=='/') end--;
+		return root.substring(start, end);
+	}
+
+	private final Map<String, Entry> index = new HashMap<>();
+	private final List<ZipFile> zipFiles = new ArrayList<>();
+
+	private IndexedSourceProvider(){}
+
+	private void indexJar(Path jar, String root) throws IOException{
+		ZipFile zip = new ZipFile(jar.toFile());
+		zipFiles.add(zip);
+		String prefix = root.isEmpty() ? "" : root+"/";
+		for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ){
+			ZipEntry entry = e.nextElement();
+			String name = entry.getName();
+			if(entry.isDirectory()||!name.startsWith(prefix)||!name.endsWith(EXTENSION)) continue;
+			index.putIfAbsent(name.substring(prefix.length(), name.length()-EXTENSION.length()), () -> {
+				try(InputStream in = zip.getInputStream(entry)){
+					return Source.of(readAll(in, entry.getSize()), StandardCharsets.UTF_8);
+				}
+			});
+		}
+	}
+
+	private void indexDirectory(Path directory) throws IOException{
+		try(Stream<Path> files = Files.walk(directory)){
+			files.forEach(file -> {
+				if(!Files.isRegularFile(file)) return;
+				String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+				if(!name.endsWith(EXTENSION)) return;
+				index.putIfAbsent(name.substring(0, name.length()-EXTENSION.length()),
+						() -> Source.of(Files.readAllBytes(file), StandardCharsets.UTF_8));
+			});
+		}
+	}
+
+	private static byte[] readAll(InputStream in, long size) throws IOException{
+		byte[] bytes = new byte[size>=0&&size<=Integer.MAX_VALUE-8 ? (int)size : 8192];
+		int length = 0;
+		while(true){
+			if(length==bytes.length){
+				int b = in.read();
+				if(b<0) return bytes;
+				bytes = Arrays.copyOf(bytes, Math.max(8192, length*2));
+				bytes[length++] = (byte)b;
+			}
+			int read = in.read(bytes, length, bytes.length-length);
+			if(read<0) return length==bytes.length ? bytes : Arrays.copyOf(bytes, length);
+			length += read;
+		}
+	}
+
+	/**
+	 * @return Unmodifiable view of every path indexed
+	 */
+	public Set<String> paths(){
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	@Nullable @Override public Source resolve(String path) throws IOException{
+		Entry entry = index.get(path);
+		return entry!=null ? entry.read() : null;
+	}
+
+	@Override public void close() throws IOException{
+		IOException exception = null;
+		for(ZipFile zip : zipFiles){
+			try{
+				zip.close();
+			}catch(IOException ex){
+				if(exception==null) exception = ex;
+				else exception.addSuppressed(ex);
+			}
+		}
+		zipFiles.clear();
+		if(exception!=null) throw exception;
+	}
+
+	@FunctionalInterface
+	private interface Entry{
+		Source read() throws IOException;
+	}
+}
@@ -225,6 +225,20 @@ public abstract class Among extends ToPrettyString.Base{
 		return new AmongPrimitive(value.toString());
 	}
 
+	/**
+	 * Create an instance of {@link AmongPrimitive} with the value provided, and its numeric value already parsed.
+	 * {@code number} is expected to be equal to the result of {@link Double#parseDouble(String)} on {@code value}; it
+	 * will be returned by {@link AmongPrimitive#tryDoubleValue()} until the value changes.
+	 *
+	 * @param value  Value
+	 * @param number Numeric value of {@code value}
+	 * @return A new instance of {@link AmongPrimitive}
+	 * @throws NullPointerException If {@code value == null}
+	 */
+	public static AmongPrimitive value(String value, double number){
+		return new AmongPrimitive(value, number);
+	}
+
 	/**
 	 * Create an empty instance of {@link AmongObject}.
 	 *
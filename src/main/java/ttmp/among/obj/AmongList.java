@@ -1,7 +1,6 @@
 package ttmp.among.obj;
 
 import org.jetbrains.annotations.Nullable;
-import ttmp.among.format.AmongLiteralFormatting;
 import ttmp.among.format.PrettifyContext;
 import ttmp.among.format.PrettifyOption;
 import ttmp.among.util.NodePath;
@@ -120,65 +119,27 @@ public class AmongList extends AmongNameable implements Iterable<Among>{
 	}
 
 	@Override public void walk(AmongWalker visitor, NodePath path){
-		if(visitor.walkBefore(this, path)){
-			for(int i = 0; i<this.values.size(); i++)
-				this.values.get(i).walk(visitor, path.subPath(i));
-			visitor.walkAfter(this, path);
-		}
+		AmongTraversal.walk(this, visitor, path);
 	}
 
 	@Override public AmongList copy(){
-		AmongList l = new AmongList(this.getName());
-		l.setOperation(this.isOperation());
-		for(Among among : this.values)
-			l.add(among.copy());
-		return l;
+		return (AmongList)AmongTraversal.copy(this);
 	}
 
 	@Override public boolean equals(Object o){
 		if(this==o) return true;
 		if(o==null||getClass()!=o.getClass()) return false;
-		AmongList l = (AmongList)o;
-		return getName().equals(l.getName())&&
-				values.equals(l.values);
+		return AmongTraversal.equals(this, (AmongList)o);
 	}
 	@Override public int hashCode(){
-		return Objects.hash(getName(), values);
+		return AmongTraversal.hashCode(this);
 	}
 
 	@Override public void toString(StringBuilder stb, PrettifyOption option, PrettifyContext context){
-		nameToString(stb, option, context);
-		boolean operation = this.operation&&!option.jsonCompatibility;
-		if(isEmpty()) stb.append(operation ? "()" : "[]");
-		else{
-			stb.append(operation ? '(' : '[');
-			for(int i = 0; i<values.size(); i++){
-				if(i>0) stb.append(",");
-				values.get(i).toString(stb, option, operation ? PrettifyContext.OPERATION : PrettifyContext.NONE);
-			}
-			stb.append(operation ? ')' : ']');
-		}
+		AmongTraversal.toString(this, stb, option, context);
 	}
 
 	@Override public void toPrettyString(StringBuilder stb, int indents, PrettifyOption option, PrettifyContext context){
-		nameToPrettyString(stb, indents, option, context);
-		if(hasName()) stb.append(' ');
-		boolean operation = this.operation&&!option.jsonCompatibility;
-		if(isEmpty()) stb.append(operation ? "()" : "[]");
-		else{
-			stb.append(operation ? '(' : '[');
-			boolean isCompact = values.size()<=option.compactListSize;
-			for(int i = 0; i<values.size(); i++){
-				if(!isCompact){
-					if(option.jsonCompatibility&&i>0) stb.append(',');
-					AmongLiteralFormatting.newlineAndIndent(stb, indents+1, option);
-				}else if(i>0) stb.append(", ");
-				else stb.append(' ');
-				values.get(i).toPrettyString(stb, isCompact ? indents : indents+1, option, operation ? PrettifyContext.OPERATION : PrettifyContext.NONE);
-			}
-			if(!isCompact) AmongLiteralFormatting.newlineAndIndent(stb, indents, option);
-			else stb.append(' ');
-			stb.append(operation ? ')' : ']');
-		}
+		AmongTraversal.toPrettyString(this, stb, indents, option, context);
 	}
 }
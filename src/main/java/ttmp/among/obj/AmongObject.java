@@ -1,7 +1,6 @@
 package ttmp.among.obj;
 
 import org.jetbrains.annotations.Nullable;
-import ttmp.among.format.AmongLiteralFormatting;
 import ttmp.among.format.PrettifyContext;
 import ttmp.among.format.PrettifyOption;
 import ttmp.among.util.NodePath;
@@ -153,77 +152,27 @@ public class AmongObject extends AmongNameable{
 	}
 
 	@Override public void walk(AmongWalker visitor, NodePath path){
-		if(visitor.walkBefore(this, path)){
-			for(Map.Entry<String, Among> e : this.properties.entrySet())
-				e.getValue().walk(visitor, path.subPath(e.getKey()));
-			visitor.walkAfter(this, path);
-		}
+		AmongTraversal.walk(this, visitor, path);
 	}
 
 	@Override public AmongObject copy(){
-		AmongObject o = new AmongObject(this.getName());
-		for(Map.Entry<String, Among> e : this.properties.entrySet())
-			o.setProperty(e.getKey(), e.getValue().copy());
-		return o;
+		return (AmongObject)AmongTraversal.copy(this);
 	}
 
 	@Override public boolean equals(Object o){
 		if(this==o) return true;
 		if(o==null||getClass()!=o.getClass()) return false;
-		AmongObject o2 = (AmongObject)o;
-		return getName().equals(o2.getName())&&
-				properties.equals(o2.properties);
+		return AmongTraversal.equals(this, (AmongObject)o);
 	}
 	@Override public int hashCode(){
-		return Objects.hash(getName(), properties);
+		return AmongTraversal.hashCode(this);
 	}
 
 	@Override public void toString(StringBuilder stb, PrettifyOption option, PrettifyContext context){
-		nameToString(stb, option, context);
-		if(isEmpty()) stb.append("{}");
-		else{
-			stb.append('{');
-			boolean first = true;
-			for(Map.Entry<String, Among> e : properties.entrySet()){
-				if(first) first = false;
-				else stb.append(',');
-				if(!option.jsonCompatibility&&AmongLiteralFormatting.isSimpleKey(e.getKey()))
-					AmongLiteralFormatting.simpleKeyToString(stb, e.getKey(), false);
-				else AmongLiteralFormatting.primitiveToString(stb, e.getKey());
-				stb.append(':');
-				e.getValue().toString(stb, option, PrettifyContext.NONE);
-			}
-			stb.append('}');
-		}
+		AmongTraversal.toString(this, stb, option, context);
 	}
 
 	@Override public void toPrettyString(StringBuilder stb, int indents, PrettifyOption option, PrettifyContext context){
-		nameToPrettyString(stb, indents, option, context);
-		if(hasName()) stb.append(' ');
-		if(isEmpty()) stb.append("{}");
-		else{
-			stb.append('{');
-			boolean isCompact = properties.size()<=option.compactObjectSize;
-			boolean first = true;
-			for(Map.Entry<String, Among> e : properties.entrySet()){
-				if(!isCompact){
-					if(option.jsonCompatibility){
-						if(first) first = false;
-						else stb.append(',');
-					}
-					AmongLiteralFormatting.newlineAndIndent(stb, indents+1, option);
-				}else if(first){
-					first = false;
-					stb.append(' ');
-				}else stb.append(", ");
-				if(!option.jsonCompatibility&&AmongLiteralFormatting.isSimpleKey(e.getKey()))
-					AmongLiteralFormatting.simpleKeyToString(stb, e.getKey(), false);
-				else AmongLiteralFormatting.primitiveToPrettyString(stb, e.getKey(), isCompact ? indents : indents+1, option);
-				e.getValue().toPrettyString(stb.append(": "), isCompact ? indents : indents+1, option, PrettifyContext.NONE);
-			}
-			if(!isCompact) AmongLiteralFormatting.newlineAndIndent(stb, indents, option);
-			else stb.append(' ');
-			stb.append('}');
-		}
+		AmongTraversal.toPrettyString(this, stb, indents, option, context);
 	}
 }
@@ -5,8 +5,12 @@ import ttmp.among.format.AmongLiteralFormatting;
 import ttmp.among.format.PrettifyContext;
 import ttmp.among.format.PrettifyOption;
 import ttmp.among.util.NodePath;
+import ttmp.among.util.NumberParser;
 
 import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 
 /**
  * {@link Among} node representing a string value. Snippet below shows a primitive written in Among.
@@ -16,6 +20,16 @@ import java.util.Objects;
  */
 public class AmongPrimitive extends Among{
 	private String value;
+	/**
+	 * Cached result of parsing {@link AmongPrimitive#value} into double; only valid if {@code numberState} is {@link
+	 * AmongPrimitive#NUMBER_VALID}.
+	 */
+	private double number;
+	private byte numberState;
+
+	private static final byte NUMBER_UNKNOWN = 0;
+	private static final byte NUMBER_VALID = 1;
+	private static final byte NUMBER_INVALID = 2;
 
 	AmongPrimitive(){
 		this("");
@@ -23,12 +37,48 @@ public class AmongPrimitive extends Among{
 	AmongPrimitive(String value){
 		this.value = Objects.requireNonNull(value);
 	}
+	AmongPrimitive(String value, double number){
+		this.value = Objects.requireNonNull(value);
+		this.number = number;
+		this.numberState = NUMBER_VALID;
+	}
 
 	public String getValue(){
 		return value;
 	}
 	public void setValue(String value){
 		this.value = Objects.requireNonNull(value);
+		this.numberState = NUMBER_UNKNOWN;
+	}
+
+	/**
+	 * @return Value of this primitive parsed into integer, or empty if the value is not a valid int value. Accepts same
+	 * inputs as {@link Integer#parseInt(String)}.
+	 */
+	public OptionalInt tryIntValue(){
+		return NumberParser.parseInt(getValue());
+	}
+	/**
+	 * @return Value of this primitive parsed into long, or empty if the value is not a valid long value. Accepts same
+	 * inputs as {@link Long#parseLong(String)}.
+	 */
+	public OptionalLong tryLongValue(){
+		return NumberParser.parseLong(getValue());
+	}
+	/**
+	 * @return Value of this primitive parsed into double, or empty if the value is not a valid double value. Accepts
+	 * same inputs as {@link Double#parseDouble(String)}. The result is cached until the value changes.
+	 */
+	public OptionalDouble tryDoubleValue(){
+		if(numberState==NUMBER_UNKNOWN){
+			OptionalDouble d = NumberParser.parseDouble(getValue());
+			if(d.isPresent()){
+				this.number = d.getAsDouble();
+				this.numberState = NUMBER_VALID;
+			}else this.numberState = NUMBER_INVALID;
+			return d;
+		}
+		return numberState==NUMBER_VALID ? OptionalDouble.of(number) : OptionalDouble.empty();
 	}
 
 	/**
@@ -36,14 +86,18 @@ public class AmongPrimitive extends Among{
 	 * @throws NumberFormatException If the value is not a valid int value
 	 */
 	public int getIntValue(){
-		return Integer.parseInt(getValue());
+		OptionalInt i = tryIntValue();
+		if(!i.isPresent()) throw new NumberFormatException("For input string: \""+getValue()+"\"");
+		return i.getAsInt();
 	}
 	/**
 	 * @return Value of this primitive parsed into long, using {@link Long#parseLong(String)}
 	 * @throws NumberFormatException If the value is not a valid long value
 	 */
 	public long getLongValue(){
-		return Long.parseLong(getValue());
+		OptionalLong l = tryLongValue();
+		if(!l.isPresent()) throw new NumberFormatException("For input string: \""+getValue()+"\"");
+		return l.getAsLong();
 	}
 	/**
 	 * @return Value of this primitive parsed into float, using {@link Float#parseFloat(String)}
@@ -57,7 +111,9 @@ public class AmongPrimitive extends Among{
 	 * @throws NumberFormatException If the value is not a valid double value
 	 */
 	public double getDoubleValue(){
-		return Double.parseDouble(getValue());
+		OptionalDouble d = tryDoubleValue();
+		if(!d.isPresent()) throw new NumberFormatException("For input string: \""+getValue()+"\"");
+		return d.getAsDouble();
 	}
 	/**
 	 * @return Value of this primitive parsed into boolean. This method returns {@code true} or
@@ -76,44 +132,28 @@ public class AmongPrimitive extends Among{
 	 * If the operation fails, {@code fallback} will be returned.
 	 */
 	public int getIntValue(int fallback){
-		try{
-			return Integer.parseInt(getValue());
-		}catch(NumberFormatException ex){
-			return fallback;
-		}
+		return NumberParser.parseInt(getValue(), fallback);
 	}
 	/**
 	 * @return Value of this primitive parsed into long, using {@link Long#parseLong(String)}.
 	 * If the operation fails, {@code fallback} will be returned.
 	 */
 	public long getLongValue(long fallback){
-		try{
-			return Long.parseLong(getValue());
-		}catch(NumberFormatException ex){
-			return fallback;
-		}
+		return NumberParser.parseLong(getValue(), fallback);
 	}
 	/**
 	 * @return Value of this primitive parsed into float, using {@link Float#parseFloat(String)}.
 	 * If the operation fails, {@code fallback} will be returned.
 	 */
 	public float getFloatValue(float fallback){
-		try{
-			return Float.parseFloat(getValue());
-		}catch(NumberFormatException ex){
-			return fallback;
-		}
+		return NumberParser.parseFloat(getValue(), fallback);
 	}
 	/**
 	 * @return Value of this primitive parsed into double, using {@link Double#parseDouble(String)}.
 	 * If the operation fails, {@code fallback} will be returned.
 	 */
 	public double getDoubleValue(double fallback){
-		try{
-			return Double.parseDouble(getValue());
-		}catch(NumberFormatException ex){
-			return fallback;
-		}
+		return tryDoubleValue().orElse(fallback);
 	}
 	/**
 	 * @return Value of this primitive parsed into boolean. This method returns {@code true} or
@@ -138,7 +178,7 @@ public class AmongPrimitive extends Among{
 	}
 
 	@Override public AmongPrimitive copy(){
-		return new AmongPrimitive(this.value);
+		return numberState==NUMBER_VALID ? new AmongPrimitive(this.value, this.number) : new AmongPrimitive(this.value);
 	}
 
 	@Override public boolean equals(Object o){
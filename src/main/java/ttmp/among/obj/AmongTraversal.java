@@ -0,0 +1,336 @@
+package ttmp.among.obj;
+
+import org.jetbrains.annotations.Nullable;
+import ttmp.among.format.AmongLiteralFormatting;
+import ttmp.among.format.PrettifyContext;
+import ttmp.among.format.PrettifyOption;
+import ttmp.among.util.NodePath;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations visiting every node of a tree - walking, copying, equality check, hashing and formatting - implemented
+ * with an explicit stack of {@link Cursor}s instead of recursion, so that depth of the tree is only limited by memory.
+ */
+final class AmongTraversal{
+	private AmongTraversal(){}
+
+	static void walk(Among among, AmongWalker visitor, NodePath path){
+		if(!walkBefore(among, visitor, path)) return;
+		List<WalkCursor> stack = new ArrayList<>();
+		stack.add(new WalkCursor(among.asNameable(), path));
+		while(!stack.isEmpty()){
+			WalkCursor c = stack.get(stack.size()-1);
+			Among child = c.next();
+			if(child==null){
+				stack.remove(stack.size()-1);
+				if(c.node.isObj()) visitor.walkAfter(c.node.asObj(), c.path);
+				else visitor.walkAfter(c.node.asList(), c.path);
+				continue;
+			}
+			NodePath childPath = c.key!=null ? c.path.subPath(c.key) : c.path.subPath(c.count-1);
+			if(walkBefore(child, visitor, childPath)) stack.add(new WalkCursor(child.asNameable(), childPath));
+		}
+	}
+
+	/**
+	 * @return Whether the walker will walk down the node; always {@code false} for primitives
+	 */
+	private static boolean walkBefore(Among among, AmongWalker visitor, NodePath path){
+		if(among.isPrimitive()){
+			visitor.walk(among.asPrimitive(), path);
+			return false;
+		}
+		return among.isObj() ? visitor.walkBefore(among.asObj(), path) : visitor.walkBefore(among.asList(), path);
+	}
+
+	static AmongNameable copy(AmongNameable nameable){
+		AmongNameable copy = emptyCopy(nameable);
+		List<CopyCursor> stack = new ArrayList<>();
+		stack.add(new CopyCursor(nameable, copy));
+		while(!stack.isEmpty()){
+			CopyCursor c = stack.get(stack.size()-1);
+			Among child = c.next();
+			if(child==null){
+				stack.remove(stack.size()-1);
+				continue;
+			}
+			Among childCopy;
+			if(child.isPrimitive()) childCopy = child.asPrimitive().copy();
+			else{
+				AmongNameable n = emptyCopy(child.asNameable());
+				stack.add(new CopyCursor(child.asNameable(), n));
+				childCopy = n;
+			}
+			if(c.key!=null) c.copy.asObj().setProperty(c.key, childCopy);
+			else c.copy.asList().add(childCopy);
+		}
+		return copy;
+	}
+
+	private static AmongNameable emptyCopy(AmongNameable nameable){
+		if(nameable.isObj()) return new AmongObject(nameable.getName());
+		AmongList list = new AmongList(nameable.getName());
+		list.setOperation(nameable.asList().isOperation());
+		return list;
+	}
+
+	static boolean equals(AmongNameable a, AmongNameable b){
+		// pairs of nodes to compare
+		List<Among> stack = new ArrayList<>();
+		stack.add(a);
+		stack.add(b);
+		while(!stack.isEmpty()){
+			Among y = stack.remove(stack.size()-1);
+			Among x = stack.remove(stack.size()-1);
+			if(x==y) continue;
+			if(x.getClass()!=y.getClass()) return false;
+			if(x.isPrimitive()){
+				if(!x.equals(y)) return false;
+				continue;
+			}
+			if(!x.asNameable().getName().equals(y.asNameable().getName())) return false;
+			if(x.isList()){
+				AmongList l1 = x.asList(), l2 = y.asList();
+				if(l1.size()!=l2.size()) return false;
+				for(int i = l1.size()-1; i>=0; i--){
+					stack.add(l1.get(i));
+					stack.add(l2.get(i));
+				}
+			}else{
+				AmongObject o1 = x.asObj(), o2 = y.asObj();
+				if(o1.size()!=o2.size()) return false;
+				for(Map.Entry<String, Among> e : o1.properties().entrySet()){
+					Among v = o2.getProperty(e.getKey());
+					if(v==null) return false;
+					stack.add(e.getValue());
+					stack.add(v);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Identical to {@code Objects.hash(getName(), values)} for lists and {@code Objects.hash(getName(), properties)}
+	 * for objects.
+	 */
+	static int hashCode(AmongNameable nameable){
+		List<HashCursor> stack = new ArrayList<>();
+		stack.add(new HashCursor(nameable));
+		while(true){
+			HashCursor c = stack.get(stack.size()-1);
+			Among child = c.next();
+			int hash;
+			if(child==null){
+				stack.remove(stack.size()-1);
+				hash = 31*(31+c.node.getName().hashCode())+c.hash;
+				if(stack.isEmpty()) return hash;
+				c = stack.get(stack.size()-1);
+			}else if(child.isPrimitive()) hash = child.hashCode();
+			else{
+				stack.add(new HashCursor(child.asNameable()));
+				continue;
+			}
+			if(c.key!=null) c.hash += c.key.hashCode()^hash;
+			else c.hash = 31*c.hash+hash;
+		}
+	}
+
+	static void toString(AmongNameable nameable, StringBuilder stb, PrettifyOption option, PrettifyContext context){
+		if(!open(nameable, stb, option, context)) return;
+		List<Cursor> stack = new ArrayList<>();
+		stack.add(new Cursor(nameable));
+		while(!stack.isEmpty()){
+			Cursor c = stack.get(stack.size()-1);
+			Among child = c.next();
+			if(child==null){
+				stack.remove(stack.size()-1);
+				stb.append(c.node.isObj() ? '}' : isOperation(c.node, option) ? ')' : ']');
+				continue;
+			}
+			if(c.count>1) stb.append(',');
+			PrettifyContext childContext;
+			if(c.key!=null){
+				if(!option.jsonCompatibility&&AmongLiteralFormatting.isSimpleKey(c.key))
+					AmongLiteralFormatting.simpleKeyToString(stb, c.key, false);
+				else AmongLiteralFormatting.primitiveToString(stb, c.key);
+				stb.append(':');
+				childContext = PrettifyContext.NONE;
+			}else childContext = isOperation(c.node, option) ? PrettifyContext.OPERATION : PrettifyContext.NONE;
+			if(child.isPrimitive()) child.toString(stb, option, childContext);
+			else if(open(child.asNameable(), stb, option, childContext)) stack.add(new Cursor(child.asNameable()));
+		}
+	}
+
+	/**
+	 * Appends the name and the opening bracket.
+	 *
+	 * @return Whether the node has any element; empty ones are closed right away
+	 */
+	private static boolean open(AmongNameable nameable, StringBuilder stb, PrettifyOption option, PrettifyContext context){
+		nameable.nameToString(stb, option, context);
+		if(nameable.isObj()){
+			if(nameable.asObj().isEmpty()){
+				stb.append("{}");
+				return false;
+			}
+			stb.append('{');
+		}else{
+			boolean operation = isOperation(nameable, option);
+			if(nameable.asList().isEmpty()){
+				stb.append(operation ? "()" : "[]");
+				return false;
+			}
+			stb.append(operation ? '(' : '[');
+		}
+		return true;
+	}
+
+	static void toPrettyString(AmongNameable nameable, StringBuilder stb, int indents, PrettifyOption option, PrettifyContext context){
+		PrettyCursor root = openPretty(nameable, stb, indents, option, context);
+		if(root==null) return;
+		List<PrettyCursor> stack = new ArrayList<>();
+		stack.add(root);
+		while(!stack.isEmpty()){
+			PrettyCursor c = stack.get(stack.size()-1);
+			Among child = c.next();
+			if(child==null){
+				stack.remove(stack.size()-1);
+				if(!c.compact) AmongLiteralFormatting.newlineAndIndent(stb, c.indents, option);
+				else stb.append(' ');
+				stb.append(c.node.isObj() ? '}' : isOperation(c.node, option) ? ')' : ']');
+				continue;
+			}
+			int childIndents = c.compact ? c.indents : c.indents+1;
+			if(!c.compact){
+				if(option.jsonCompatibility&&c.count>1) stb.append(',');
+				AmongLiteralFormatting.newlineAndIndent(stb, c.indents+1, option);
+			}else stb.append(c.count>1 ? ", " : " ");
+			PrettifyContext childContext;
+			if(c.key!=null){
+				if(!option.jsonCompatibility&&AmongLiteralFormatting.isSimpleKey(c.key))
+					AmongLiteralFormatting.simpleKeyToString(stb, c.key, false);
+				else AmongLiteralFormatting.primitiveToPrettyString(stb, c.key, childIndents, option);
+				stb.append(": ");
+				childContext = PrettifyContext.NONE;
+			}else childContext = isOperation(c.node, option) ? PrettifyContext.OPERATION : PrettifyContext.NONE;
+			if(child.isPrimitive()) child.toPrettyString(stb, childIndents, option, childContext);
+			else{
+				PrettyCursor cursor = openPretty(child.asNameable(), stb, childIndents, option, childContext);
+				if(cursor!=null) stack.add(cursor);
+			}
+		}
+	}
+
+	/**
+	 * Appends the name and the opening bracket.
+	 *
+	 * @return Cursor for elements of the node, or {@code null} if the node is empty and closed right away
+	 */
+	@Nullable private static PrettyCursor openPretty(AmongNameable nameable, StringBuilder stb, int indents, PrettifyOption option, PrettifyContext context){
+		nameable.nameToPrettyString(stb, indents, option, context);
+		if(nameable.hasName()) stb.append(' ');
+		boolean compact;
+		if(nameable.isObj()){
+			AmongObject o = nameable.asObj();
+			if(o.isEmpty()){
+				stb.append("{}");
+				return null;
+			}
+			stb.append('{');
+			compact = o.size()<=option.compactObjectSize;
+		}else{
+			AmongList l = nameable.asList();
+			boolean operation = isOperation(nameable, option);
+			if(l.isEmpty()){
+				stb.append(operation ? "()" : "[]");
+				return null;
+			}
+			stb.append(operation ? '(' : '[');
+			compact = l.size()<=option.compactListSize;
+		}
+		return new PrettyCursor(nameable, indents, compact);
+	}
+
+	private static boolean isOperation(AmongNameable nameable, PrettifyOption option){
+		return nameable.isList()&&nameable.asList().isOperation()&&!option.jsonCompatibility;
+	}
+
+	/**
+	 * Iterates through elements of a list or properties of an object.
+	 */
+	private static class Cursor{
+		final AmongNameable node;
+		@Nullable private final Iterator<Map.Entry<String, Among>> properties;
+		/**
+		 * Key of the last property returned, or {@code null} if the node is a list.
+		 */
+		@Nullable String key;
+		/**
+		 * Number of children returned.
+		 */
+		int count;
+
+		Cursor(AmongNameable node){
+			this.node = node;
+			this.properties = node.isObj() ? node.asObj().properties().entrySet().iterator() : null;
+		}
+
+		/**
+		 * @return Next child, or {@code null} if there's no more
+		 */
+		@Nullable Among next(){
+			if(properties!=null){
+				if(!properties.hasNext()) return null;
+				Map.Entry<String, Among> e = properties.next();
+				count++;
+				key = e.getKey();
+				return e.getValue();
+			}
+			AmongList list = node.asList();
+			return count<list.size() ? list.get(count++) : null;
+		}
+	}
+
+	private static final class WalkCursor extends Cursor{
+		final NodePath path;
+
+		WalkCursor(AmongNameable node, NodePath path){
+			super(node);
+			this.path = path;
+		}
+	}
+
+	private static final class CopyCursor extends Cursor{
+		final AmongNameable copy;
+
+		CopyCursor(AmongNameable node, AmongNameable copy){
+			super(node);
+			this.copy = copy;
+		}
+	}
+
+	private static final class HashCursor extends Cursor{
+		int hash;
+
+		HashCursor(AmongNameable node){
+			super(node);
+			this.hash = node.isObj() ? 0 : 1;
+		}
+	}
+
+	private static final class PrettyCursor extends Cursor{
+		final int indents;
+		final boolean compact;
+
+		PrettyCursor(AmongNameable node, int indents, boolean compact){
+			super(node);
+			this.indents = indents;
+			this.compact = compact;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package ttmp.among.util;
+
+/**
+ * Unit used to count columns of {@link LnCol}. Columns are counted in codepoints by default; other units are provided
+ * for editors and tools that address text in different encoding.
+ */
+public enum ColumnUnit{
+	/**
+	 * Each codepoint takes one column.
+	 */
+	CODEPOINT,
+	/**
+	 * Each UTF-16 code unit takes one column; codepoints outside BMP takes two columns.
+	 */
+	UTF16,
+	/**
+	 * Each byte of UTF-8 encoding takes one column.
+	 */
+	UTF8;
+
+	/**
+	 * @param codePoint The codepoint
+	 * @return Number of columns {@code codePoint} takes in this unit
+	 */
+	public int width(int codePoint){
+		switch(this){
+			case CODEPOINT: return 1;
+			case UTF16: return Character.charCount(codePoint);
+			case UTF8: return codePoint<0x80 ? 1 : codePoint<0x800 ? 2 : codePoint<0x10000 ? 3 : 4;
+			default: throw new IllegalStateException("Unreachable");
+		}
+	}
+}
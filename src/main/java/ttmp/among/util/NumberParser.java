@@ -0,0 +1,313 @@
+package ttmp.among.util;
+
+import java.math.BigInteger;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * Number parser accepting the same inputs as {@link Integer#parseInt(String)}, {@link Long#parseLong(String)}, {@link
+ * Float#parseFloat(String)} and {@link Double#parseDouble(String)}, but reporting invalid inputs without throwing
+ * exceptions.<br>
+ * Decimal floating point numbers with up to 19 significant digits are converted directly, with Clinger's fast path
+ * and Eisel-Lemire algorithm; other valid inputs (hexadecimal numbers, or decimals with more digits) are handed to the
+ * standard library after validation.
+ */
+public final class NumberParser{
+	private NumberParser(){}
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final float[] FLOAT_POWERS_OF_TEN = {
+			1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	public static OptionalInt parseInt(CharSequence s){
+		OptionalLong l = parseInteger(s, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		return l.isPresent() ? OptionalInt.of((int)l.getAsLong()) : OptionalInt.empty();
+	}
+	public static int parseInt(CharSequence s, int fallback){
+		OptionalLong l = parseInteger(s, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		return l.isPresent() ? (int)l.getAsLong() : fallback;
+	}
+
+	public static OptionalLong parseLong(CharSequence s){
+		return parseInteger(s, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+	public static long parseLong(CharSequence s, long fallback){
+		return parseInteger(s, Long.MIN_VALUE, Long.MAX_VALUE).orElse(fallback);
+	}
+
+	public static OptionalDouble parseDouble(CharSequence s){
+		Decimal d = new Decimal();
+		return d.read(s) ? OptionalDouble.of(d.toDouble(s)) : OptionalDouble.empty();
+	}
+	public static double parseDouble(CharSequence s, double fallback){
+		Decimal d = new Decimal();
+		return d.read(s) ? d.toDouble(s) : fallback;
+	}
+
+	public static float parseFloat(CharSequence s, float fallback){
+		Decimal d = new Decimal();
+		return d.read(s) ? d.toFloat(s) : fallback;
+	}
+
+	/**
+	 * Converts decimal number {@code significand * 10^exponent} to the closest double value.
+	 *
+	 * @param significand Significand, treated as unsigned integer
+	 * @param exponent    Exponent of 10
+	 * @param negative    Whether the number is negative
+	 * @return The closest double value
+	 */
+	public static double toDouble(long significand, int exponent, boolean negative){
+		double d;
+		if(significand==0) d = 0;
+		else if(significand>=0&&significand<=1L<<53&&exponent>=-22&&exponent<=22){
+			// both are exactly representable, so the result is correctly rounded
+			d = exponent<0 ? significand/POWERS_OF_TEN[-exponent] : significand*POWERS_OF_TEN[exponent];
+		}else d = Double.longBitsToDouble(eiselLemire(significand, exponent));
+		return negative ? -d : d;
+	}
+
+	private static OptionalLong parseInteger(CharSequence s, long min, long max){
+		int len = s.length();
+		if(len==0) return OptionalLong.empty();
+		int i = 0;
+		boolean negative = false;
+		char first = s.charAt(0);
+		if(first=='-'||first=='+'){
+			if(len==1) return OptionalLong.empty();
+			negative = first=='-';
+			i = 1;
+		}
+		// accumulated negatively, as the range of negative values is larger
+		long limit = negative ? min : -max;
+		long multiplyLimit = limit/10;
+		long result = 0;
+		for(; i<len; i++){
+			char c = s.charAt(i);
+			int digit = c>='0'&&c<='9' ? c-'0' : c<128 ? -1 : Character.digit(c, 10);
+			if(digit<0||result<multiplyLimit) return OptionalLong.empty();
+			result *= 10;
+			if(result<limit+digit) return OptionalLong.empty();
+			result -= digit;
+		}
+		return OptionalLong.of(negative ? result : -result);
+	}
+
+	/**
+	 * Parse state of a floating point number.
+	 */
+	private static final class Decimal{
+		private int start, end;
+		private boolean negative;
+		/**
+		 * Special values; NaN, infinity, or a value that should be parsed by the standard library
+		 */
+		private boolean nan, infinity, delegate;
+		private long significand;
+		private int exponent;
+
+		/**
+		 * Validates the input, reading the value if it's a decimal with up to 19 significant digits.
+		 *
+		 * @return Whether the input is valid
+		 */
+		boolean read(CharSequence s){
+			// leading and trailing control characters and whitespaces are ignored, like String#trim()
+			start = 0;
+			end = s.length();
+			while(start<end&&s.charAt(start)<=' ') start++;
+			while(end>start&&s.charAt(end-1)<=' ') end--;
+			int i = start;
+			if(i==end) return false;
+			char c = s.charAt(i);
+			if(c=='-'||c=='+'){
+				negative = c=='-';
+				if(++i==end) return false;
+				c = s.charAt(i);
+			}
+			if(c=='N') return nan = regionEquals(s, i, "NaN");
+			if(c=='I') return infinity = regionEquals(s, i, "Infinity");
+			if(c=='0'&&i+1<end&&(s.charAt(i+1)=='x'||s.charAt(i+1)=='X')) return delegate = readHex(s, i+2);
+
+			int digits = 0;
+			boolean anyDigit = false, dot = false;
+			for(; i<end; i++){
+				c = s.charAt(i);
+				if(c>='0'&&c<='9'){
+					anyDigit = true;
+					if(digits==0&&c=='0'){ // leading zeros
+						if(dot) exponent--;
+						continue;
+					}
+					if(digits<19){
+						significand = significand*10+(c-'0');
+						if(dot) exponent--;
+					}else{
+						if(c!='0') delegate = true;
+						if(!dot) exponent++;
+					}
+					digits++;
+				}else if(c=='.'&&!dot) dot = true;
+				else break;
+			}
+			if(!anyDigit) return false;
+			if(i<end&&(c=='e'||c=='E')){
+				if(++i==end) return false;
+				c = s.charAt(i);
+				boolean negativeExponent = c=='-';
+				if((c=='-'||c=='+')&&++i==end) return false;
+				int expStart = i;
+				int exp = 0;
+				for(; i<end; i++){
+					c = s.charAt(i);
+					if(c<'0'||c>'9') break;
+					if(exp<100000) exp = exp*10+(c-'0');
+				}
+				if(i==expStart) return false;
+				exponent += negativeExponent ? -exp : exp;
+			}
+			return isSuffixOrEnd(s, i);
+		}
+
+		private boolean readHex(CharSequence s, int i){
+			boolean anyDigit = false, dot = false;
+			for(; i<end; i++){
+				char c = s.charAt(i);
+				if(c>='0'&&c<='9'||c>='a'&&c<='f'||c>='A'&&c<='F') anyDigit = true;
+				else if(c=='.'&&!dot) dot = true;
+				else break;
+			}
+			if(!anyDigit||i==end||(s.charAt(i)!='p'&&s.charAt(i)!='P')) return false;
+			if(++i<end&&(s.charAt(i)=='-'||s.charAt(i)=='+')) i++;
+			int expStart = i;
+			while(i<end&&s.charAt(i)>='0'&&s.charAt(i)<='9') i++;
+			return i>expStart&&isSuffixOrEnd(s, i);
+		}
+
+		private boolean isSuffixOrEnd(CharSequence s, int i){
+			if(i==end) return true;
+			if(i!=end-1) return false;
+			switch(s.charAt(i)){
+				case 'f': case 'F': case 'd': case 'D': return true;
+				default: return false;
+			}
+		}
+
+		private boolean regionEquals(CharSequence s, int i, String expected){
+			if(end-i!=expected.length()) return false;
+			for(int j = 0; j<expected.length(); j++)
+				if(s.charAt(i+j)!=expected.charAt(j)) return false;
+			return true;
+		}
+
+		double toDouble(CharSequence s){
+			if(nan) return Double.NaN;
+			if(infinity) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+			if(delegate) return Double.parseDouble(s.subSequence(start, end).toString());
+			return NumberParser.toDouble(significand, exponent, negative);
+		}
+
+		float toFloat(CharSequence s){
+			if(nan) return Float.NaN;
+			if(infinity) return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+			if(!delegate&&significand>=0&&significand<=1L<<24&&exponent>=-10&&exponent<=10){
+				float f = exponent<0 ? significand/FLOAT_POWERS_OF_TEN[-exponent] : significand*FLOAT_POWERS_OF_TEN[exponent];
+				return negative ? -f : f;
+			}
+			return Float.parseFloat(s.subSequence(start, end).toString());
+		}
+	}
+
+	private static final int SMALLEST_POWER_OF_TEN = -342;
+	private static final int LARGEST_POWER_OF_TEN = 308;
+
+	/**
+	 * Eisel-Lemire algorithm, as described in "Number Parsing at a Gigabyte per Second" by Daniel Lemire.
+	 *
+	 * @param w Significand, treated as unsigned integer. Should not be zero.
+	 * @param q Exponent of 10
+	 * @return Bits of the closest positive double value
+	 */
+	private static long eiselLemire(long w, int q){
+		if(q<SMALLEST_POWER_OF_TEN) return 0;
+		if(q>LARGEST_POWER_OF_TEN) return 0x7FF0000000000000L;
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		long[] powers = PowersOfFive.TABLE;
+		int index = 2*(q-SMALLEST_POWER_OF_TEN);
+		long high = multiplyHigh(w, powers[index]);
+		long low = w*powers[index];
+		if((high&0x1FF)==0x1FF){ // lower bits might be affected by the truncated part of the power
+			long secondHigh = multiplyHigh(w, powers[index+1]);
+			low += secondHigh;
+			if(Long.compareUnsigned(secondHigh, low)>0) high++;
+		}
+		int upperBit = (int)(high>>>63);
+		int shift = upperBit+64-52-3;
+		long mantissa = high>>>shift;
+		int power2 = (((152170+65536)*q)>>16)+63+upperBit-lz+1023;
+		if(power2<=0){ // subnormal
+			if(-power2+1>=64) return 0;
+			mantissa >>>= -power2+1;
+			mantissa += mantissa&1;
+			mantissa >>>= 1;
+			return mantissa|(mantissa<1L<<52 ? 0 : 1L<<52);
+		}
+		// round ties to even; ties are only possible with small exponents
+		if(Long.compareUnsigned(low, 1)<=0&&q>=-4&&q<=23&&(mantissa&3)==1&&(mantissa<<shift)==high)
+			mantissa &= ~1L;
+		mantissa += mantissa&1;
+		mantissa >>>= 1;
+		if(mantissa>=2L<<52){
+			mantissa = 1L<<52;
+			power2++;
+		}
+		mantissa &= ~(1L<<52);
+		if(power2>=0x7FF) return 0x7FF0000000000000L;
+		return mantissa|(long)power2<<52;
+	}
+
+	/**
+	 * @return Upper 64 bits of the unsigned 128-bit product
+	 */
+	private static long multiplyHigh(long x, long y){
+		long x0 = x&0xFFFFFFFFL, x1 = x>>>32;
+		long y0 = y&0xFFFFFFFFL, y1 = y>>>32;
+		long p01 = x0*y1;
+		long middle = x1*y0+(x0*y0>>>32)+(p01&0xFFFFFFFFL);
+		return x1*y1+(middle>>>32)+(p01>>>32);
+	}
+
+	/**
+	 * 128-bit approximations of powers of five from 5^-342 to 5^308, normalized so the most significant bit is set.
+	 * Each power is stored as two longs, upper half first.
+	 */
+	private static final class PowersOfFive{
+		private static final long[] TABLE = new long[2*(LARGEST_POWER_OF_TEN-SMALLEST_POWER_OF_TEN+1)];
+
+		static{
+			BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+			for(int q = SMALLEST_POWER_OF_TEN; q<=LARGEST_POWER_OF_TEN; q++){
+				BigInteger c;
+				if(q<0){
+					BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+					int z = power5.bitLength();
+					int b = q>=-27 ? z+127 : 2*z+128;
+					c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+					while(c.compareTo(two128)>=0) c = c.shiftRight(1);
+				}else{
+					c = BigInteger.valueOf(5).pow(q);
+					c = c.bitLength()<128 ? c.shiftLeft(128-c.bitLength()) : c.shiftRight(c.bitLength()-128);
+				}
+				int index = 2*(q-SMALLEST_POWER_OF_TEN);
+				TABLE[index] = c.shiftRight(64).longValue();
+				TABLE[index+1] = c.longValue();
+			}
+		}
+	}
+}
@@ -1,8 +1,27 @@
 package test;
 
 import org.junit.jupiter.api.Test;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.AmongParser;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Source;
+import ttmp.among.definition.AmongDefinition;
+import ttmp.among.definition.OperatorDefinition;
+import ttmp.among.definition.OperatorRegistry;
+import ttmp.among.definition.OperatorType;
+import ttmp.among.obj.Among;
+import ttmp.among.obj.AmongList;
+import ttmp.among.obj.AmongObject;
+import ttmp.among.obj.AmongRoot;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class CompileTests{
 	@Test public void importing() throws IOException{
@@ -12,6 +31,172 @@ public class CompileTests{
 		expectWarning("macroRedef");
 	}
 
+	@Test public void streaming() throws IOException{
+		AmongEngine engine = new AmongEngine();
+		for(String name : new String[]{"5", "macroTest", "undefTest", "keywordTest"}){
+			CompileResult expected = engine.read(TestUtil.expectSourceFrom("equality_tests", name));
+			List<Among> objects = new ArrayList<>();
+			CompileResult result = engine.readStreaming(TestUtil.expectSourceFrom("equality_tests", name), objects::add);
+			result.expectSuccess();
+			assertTrue(result.root().isEmpty());
+			assertEquals(expected.root().objects(), objects);
+			assertEquals(expected.definition().macros(), result.definition().macros());
+			assertEquals(expected.definition().operators(), result.definition().operators());
+		}
+	}
+
+	@Test public void literals(){
+		CompileResult result = new AmongEngine().read(Source.of(
+				"{a: a/**/b, b: a\\tb, c: 'x\\ny', d: a  b /*c*/ d, e: 'x\n  |y', f: ab\\\ncd, g: 'plain', h: ''}"));
+		result.expectSuccess();
+		AmongObject o = result.root().singleObject().asObj();
+		assertEquals("ab", o.getProperty("a").asPrimitive().getValue());
+		assertEquals("a\tb", o.getProperty("b").asPrimitive().getValue());
+		assertEquals("x\ny", o.getProperty("c").asPrimitive().getValue());
+		assertEquals("a  b  d", o.getProperty("d").asPrimitive().getValue());
+		assertEquals("x\ny", o.getProperty("e").asPrimitive().getValue());
+		assertEquals("abcd", o.getProperty("f").asPrimitive().getValue());
+		assertEquals("plain", o.getProperty("g").asPrimitive().getValue());
+		assertEquals("", o.getProperty("h").asPrimitive().getValue());
+	}
+
+	@Test public void longestOperator(){
+		AmongEngine engine = new AmongEngine();
+		CompileResult result = engine.read(Source.of("operator = as binary\noperator == as binary (1)\n"+
+				"operator ==> as binary (2)\n(a==>b)\n(a==b)\n(a=b)\nundef operator ==>\n(a==>b)"));
+		result.expectSuccess();
+		assertEquals(operation("==>", "a", "b"), result.root().getObject(0));
+		assertEquals(operation("==", "a", "b"), result.root().getObject(1));
+		assertEquals(operation("=", "a", "b"), result.root().getObject(2));
+		assertEquals(operation("==", "a", ">b"), result.root().getObject(3));
+	}
+
+	@Test public void operatorLookup(){
+		OperatorRegistry registry = new OperatorRegistry();
+		registry.addOperator("=", OperatorType.BINARY);
+		registry.addOperator("==>", OperatorType.BINARY);
+		registry.add(new OperatorDefinition("eq", true, OperatorType.BINARY, Double.NaN));
+		assertEquals(Arrays.asList("==>", "="), names(registry.getOperators('=')));
+		assertTrue(registry.getOperators('e').isEmpty());
+		registry.addOperator("==", OperatorType.BINARY);
+		assertEquals(Arrays.asList("==>", "==", "="), names(registry.getOperators('=')));
+		registry.remove("==>", false);
+		assertEquals(Arrays.asList("==", "="), names(registry.getOperators('=')));
+		assertEquals(Collections.singletonList("eq"), names(registry.getKeywords('e')));
+		registry.clear();
+		assertTrue(registry.getKeywords('e').isEmpty());
+	}
+
+	private static List<String> names(Set<OperatorRegistry.NameGroup> groups){
+		List<String> list = new ArrayList<>();
+		for(OperatorRegistry.NameGroup g : groups) list.add(g.name());
+		return list;
+	}
+
+	@Test public void operatorPrecedence(){
+		AmongEngine engine = new AmongEngine();
+		CompileResult result = engine.read(Source.of("operator - as binary (1) and prefix (3)\n"+
+				"operator * as binary (2)\noperator ^ as right-associative binary (4)\noperator ! as postfix (5)\n"+
+				"(- a ^ b ^ c ! * d - e)\n(a - - b ! ! * c)"));
+		result.expectSuccess();
+		assertEquals(operation("-",
+				operation("*", operation("-", operation("^", "a", operation("^", "b", operation("!", "c")))), "d"),
+				"e"), result.root().getObject(0));
+		assertEquals(operation("-", "a",
+				operation("*", operation("-", operation("!", operation("!", "b"))), "c")), result.root().getObject(1));
+	}
+
+	@Test public void reusedTokens(){
+		AmongEngine engine = new AmongEngine();
+		Source source = Source.of("[[a, b, [c, d]], {e: [f, g], h: i}, j]\nk");
+		AmongParser parser = new AmongParser(source, engine, new AmongRoot(), new AmongDefinition());
+		CompileResult result = parser.parse();
+		result.expectSuccess();
+		assertEquals(engine.read(source).root().objects(), result.root().objects());
+		assertTrue(parser.tokenizer().reusedReads()>0);
+		assertTrue(parser.tokenizer().reusedCodePoints()>0);
+	}
+
+	@Test public void literalLookahead(){
+		Source source = Source.of("[sus amogus, 'a\\uZZb', {k: v\\uZZ, l: (m)}, [n], o{}]");
+		AmongParser parser = new AmongParser(source, new AmongEngine(), new AmongRoot(), new AmongDefinition());
+		CompileResult result = parser.parse();
+		assertEquals(Among.list("sus amogus", "auZZb", Among.object().prop("k", "vuZZ").prop("l", "m"),
+				Among.list("n"), Among.namedObject("o")), result.root().singleObject());
+		assertEquals(2, result.reports().size()); // invalid escapes are reported once
+		// only single character tokens after the literals are read again
+		assertEquals(parser.tokenizer().reusedReads(), parser.tokenizer().reusedCodePoints());
+
+		// top level literals are read again with another mode, but reported once
+		result = new AmongEngine().read(Source.of("v\\uZZ\nk\\uZZ{}"));
+		assertEquals(Among.value("vuZZ"), result.root().getObject(0));
+		assertEquals(Among.namedObject("kuZZ"), result.root().getObject(1));
+		assertEquals(2, result.reports().size());
+		assertEquals(3, result.reports().get(0).sourcePosition());
+		assertEquals(9, result.reports().get(1).sourcePosition());
+	}
+
+	@Test public void stringPool(){
+		String longValue = "0123456789012345678901234567890123456789";
+		CompileResult result = new AmongEngine().read(Source.of(
+				"[ sus{key: true, quoted: 'a\\tb'}, sus{key: true, quoted: 'a\\tb'}, {key: "+longValue+"}, {key: "+longValue+"} ]"));
+		result.expectSuccess();
+		AmongList list = result.root().singleObject().asList();
+		AmongObject o1 = list.get(0).asObj(), o2 = list.get(1).asObj();
+		assertSame(o1.getName(), o2.getName());
+		assertSame(o1.properties().keySet().iterator().next(), o2.properties().keySet().iterator().next());
+		assertSame(o1.getProperty("key").asPrimitive().getValue(), o2.getProperty("key").asPrimitive().getValue());
+		assertEquals("a\tb", o1.getProperty("quoted").asPrimitive().getValue());
+		assertSame(o1.getProperty("quoted").asPrimitive().getValue(), o2.getProperty("quoted").asPrimitive().getValue());
+		assertNotSame(list.get(2).asObj().getProperty("key").asPrimitive().getValue(),
+				list.get(3).asObj().getProperty("key").asPrimitive().getValue());
+
+		// limit is in codepoints, for both escaped and unescaped literals
+		StringBuilder stb = new StringBuilder();
+		for(int i = 0; i<16; i++) stb.append("\uD83D\uDE00");
+		String emojis = stb.toString();
+		result = new AmongEngine().read(Source.of("[ "+emojis+", "+emojis+", '\\t"+emojis+"', '\\t"+emojis+"' ]"));
+		result.expectSuccess();
+		list = result.root().singleObject().asList();
+		assertSame(list.get(0).asPrimitive().getValue(), list.get(1).asPrimitive().getValue());
+		assertSame(list.get(2).asPrimitive().getValue(), list.get(3).asPrimitive().getValue());
+	}
+
+	@Test public void longLiterals(){
+		StringBuilder stb = new StringBuilder();
+		for(int i = 0; i<1000; i++) stb.append("QW1vbmcgdXM/").append(i%7==0 ? "é" : "").append(i%13==0 ? "\uD83D\uDE00" : "");
+		String blob = stb.toString();
+		String comment = blob.replace('/', '-');
+		CompileResult result = new AmongEngine().read(Source.of(
+				"// "+comment+"\n{a: '"+blob+"', /* "+comment+" */ b: \""+blob+"\\t"+blob+"\n  |"+blob+"\" }"));
+		result.expectSuccess();
+		AmongObject o = result.root().singleObject().asObj();
+		assertEquals(blob, o.getProperty("a").asPrimitive().getValue());
+		assertEquals(blob+"\t"+blob+"\n"+blob, o.getProperty("b").asPrimitive().getValue());
+	}
+
+	@Test public void deepNesting(){
+		int depth = 50000;
+		StringBuilder stb = new StringBuilder();
+		for(int i = 0; i<depth; i++) stb.append(i%3==0 ? "[" : i%3==1 ? "{k:" : "(");
+		stb.append("x");
+		for(int i = depth-1; i>=0; i--) stb.append(i%3==0 ? "]" : i%3==1 ? "}" : ")");
+		CompileResult result = new AmongEngine().read(Source.of(stb.toString()));
+		result.expectSuccess();
+		Among among = result.root().singleObject();
+		Among copy = among.copy();
+		assertEquals(among, copy);
+		assertEquals(among.hashCode(), copy.hashCode());
+		assertEquals(among, new AmongEngine().read(Source.of(among.toString())).root().singleObject());
+		assertEquals(among, new AmongEngine().read(Source.of(among.toPrettyString())).root().singleObject());
+	}
+
+	private static AmongList operation(String name, Object... elements){
+		AmongList list = Among.namedList(name, elements);
+		list.setOperation(true);
+		return list;
+	}
+
 	private static void expectNoError(String fileName) throws IOException{
 		TestUtil.expectNoError(TestUtil.expectSourceFrom("compile_tests", fileName), TestUtil.ExpectWarning.NO_WARNING);
 	}
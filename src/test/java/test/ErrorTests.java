@@ -1,10 +1,22 @@
 package test;
 
 import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Report;
+import ttmp.among.compile.Source;
+import ttmp.among.obj.Among;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ErrorTests{
 	@TestFactory
@@ -22,6 +34,80 @@ public class ErrorTests{
 		return list;
 	}
 
+	@Test public void bracketMismatch(){
+		AmongEngine engine = new AmongEngine();
+		engine.structuralIndex = true;
+		CompileResult result = engine.read(Source.of("{\n  a: [1, 2}\n  b: c\n"));
+		assertTrue(result.hasError());
+		boolean hinted = false;
+		for(Report r : result.reports())
+			if(r.hints().equals(Collections.singletonList("'[' at 2:6 is closed with '}' at 2:11"))) hinted = true;
+		assertTrue(hinted);
+	}
+
+	@Test public void indexedRecovery(){
+		AmongEngine engine = new AmongEngine();
+		engine.structuralIndex = true;
+		CompileResult result = engine.read(Source.of("{ a b {x: [y, 'z}'] /* ] */}, c: d }\n[ e ]"));
+		assertEquals(1, result.reports().size());
+		assertEquals(Among.object().prop("c", "d"), result.root().getObject(0));
+		assertEquals(Among.list("e"), result.root().getObject(1));
+	}
+
+	@Test public void parallelIndex(){
+		String src = "{ a b {x: [y, 'z}'] /* ] */}, c: d }\n[ e, \"f\\\" ]\" // [ \\\n ( ]\n( g h [ i )\n'j [ ' }";
+		AmongEngine engine = new AmongEngine();
+		engine.structuralIndex = true;
+		engine.structuralIndexChunkSize = 0;
+		CompileResult expected = engine.read(Source.of(src));
+		// dedicated pool, so that chunks are scanned in parallel regardless of the number of processors
+		ForkJoinPool pool = new ForkJoinPool(4);
+		engine.structuralIndexPool = pool;
+		try{
+			for(int chunkSize = 1; chunkSize<=src.length(); chunkSize++){
+				engine.structuralIndexChunkSize = chunkSize;
+				CompileResult result = engine.read(Source.of(src));
+				assertEquals(expected.root().toString(), result.root().toString());
+				assertEquals(expected.reports().size(), result.reports().size());
+				for(int i = 0; i<expected.reports().size(); i++){
+					Report r1 = expected.reports().get(i), r2 = result.reports().get(i);
+					assertEquals(r1.message(), r2.message());
+					assertEquals(r1.sourcePosition(), r2.sourcePosition());
+					assertEquals(r1.hints(), r2.hints());
+				}
+			}
+		}finally{
+			pool.shutdown();
+		}
+	}
+
+	@Test public void errorLimit(){
+		String src = "{ a b, c: d }\n[ e, , f ]\n{ g: h, g: i }\n[ j ]";
+		AmongEngine engine = new AmongEngine();
+		CompileResult result = engine.read(Source.of(src));
+		assertFalse(result.isTruncated());
+		assertEquals(4, result.root().objects().size());
+		int errors = result.reports().size();
+		assertTrue(errors>1);
+
+		engine.maxErrors = 1;
+		result = engine.read(Source.of(src));
+		assertTrue(result.isTruncated());
+		assertEquals(1, result.reports().size());
+		assertTrue(result.root().isEmpty());
+
+		engine.maxErrors = errors;
+		result = engine.read(Source.of(src));
+		assertTrue(result.isTruncated());
+		assertEquals(errors, result.reports().size());
+
+		engine.maxErrors = errors+1;
+		assertFalse(engine.read(Source.of(src)).isTruncated());
+
+		assertTrue(engine.readJson(Source.of("[1, 2")).isTruncated());
+		assertFalse(engine.readJson(Source.of("[1, 2]")).isTruncated());
+	}
+
 	private static DynamicTest errorTest(String name){
 		return DynamicTest.dynamicTest(name, () -> TestUtil.expectError(TestUtil.expectSourceFrom("error_tests", name)));
 	}
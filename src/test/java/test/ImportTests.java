@@ -5,9 +5,26 @@ import ttmp.among.AmongEngine;
 import ttmp.among.definition.AmongDefinition;
 import ttmp.among.definition.Macro;
 import ttmp.among.definition.MacroType;
+import ttmp.among.library.DirectorySourceProvider;
+import ttmp.among.library.IndexedSourceProvider;
 import ttmp.among.obj.Among;
 import ttmp.among.util.RootAndDefinition;
 
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static ttmp.among.obj.Among.*;
 
@@ -84,6 +101,76 @@ public class ImportTests{
 		err(engine, "circRef1");
 	}
 
+	@Test public void indexedClassPath() throws IOException{
+		try(IndexedSourceProvider provider = IndexedSourceProvider.ofClassPath(
+				Thread.currentThread().getContextClassLoader(), "import_tests/")){
+			assertTrue(provider.paths().contains("importTest1"));
+			assertNull(provider.resolve("nonexistent"));
+			AmongEngine engine = new AmongEngine();
+			engine.addSourceProvider(provider);
+			RootAndDefinition expected = this.engine.getOrReadFrom("importTest1");
+			RootAndDefinition actual = engine.getOrReadFrom("importTest1");
+			assertNotNull(expected);
+			assertNotNull(actual);
+			assertEquals(expected.root().objects(), actual.root().objects());
+		}
+	}
+
+	@Test public void indexedUnsupportedProtocol(){
+		ClassLoader classLoader = new ClassLoader(null){
+			@Override public Enumeration<URL> getResources(String name) throws IOException{
+				return Collections.enumeration(Collections.singletonList(new URL("http://localhost/"+name)));
+			}
+		};
+		assertThrows(IOException.class, () -> IndexedSourceProvider.ofClassPath(classLoader, "scripts"));
+	}
+
+	@Test public void indexedJar() throws IOException{
+		Path jar = Files.createTempFile("among", ".jar");
+		try{
+			try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))){
+				out.putNextEntry(new ZipEntry("scripts/a.among"));
+				out.write("use sub/b\nx{ n: NUMBER }".getBytes(StandardCharsets.UTF_8));
+				out.putNextEntry(new ZipEntry("scripts/sub/b.among"));
+				out.write("macro NUMBER: 2".getBytes(StandardCharsets.UTF_8));
+				out.putNextEntry(new ZipEntry("other/c.among"));
+				out.write("c".getBytes(StandardCharsets.UTF_8));
+			}
+			try(IndexedSourceProvider provider = IndexedSourceProvider.ofJar(jar, "scripts")){
+				assertEquals(new HashSet<>(Arrays.asList("a", "sub/b")), provider.paths());
+				AmongEngine engine = new AmongEngine();
+				engine.addSourceProvider(provider);
+				eq(engine, "a", namedObject("x").prop("n", 2));
+			}
+		}finally{
+			Files.delete(jar);
+		}
+	}
+
+	@Test public void directoryPreload() throws Exception{
+		Path directory = Paths.get(Objects.requireNonNull(Thread.currentThread().getContextClassLoader()
+				.getResource("import_tests")).toURI());
+		DirectorySourceProvider provider = new DirectorySourceProvider(directory);
+		assertEquals(0, provider.preload(2, 0));
+		long fileCount;
+		try(Stream<Path> files = Files.list(directory)){
+			fileCount = files.count();
+		}
+		assertEquals(fileCount, provider.preload(4, Long.MAX_VALUE));
+		assertNotNull(provider.resolve("import1"));
+		assertEquals(fileCount-1, provider.preloadedSize());
+		assertNotNull(provider.resolve("import1"));
+		assertNull(provider.resolve("../equality_tests/5"));
+
+		AmongEngine engine = new AmongEngine();
+		engine.addSourceProvider(provider);
+		RootAndDefinition expected = this.engine.getOrReadFrom("importTest1");
+		RootAndDefinition actual = engine.getOrReadFrom("importTest1");
+		assertNotNull(expected);
+		assertNotNull(actual);
+		assertEquals(expected.root().objects(), actual.root().objects());
+	}
+
 	private static void eq(AmongEngine engine, String name, Among... expected){
 		long t = System.currentTimeMillis();
 		RootAndDefinition root = engine.getOrReadFrom(name);
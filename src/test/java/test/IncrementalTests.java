@@ -0,0 +1,95 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Report;
+import ttmp.among.compile.Source;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class IncrementalTests{
+	private static final int MAX_LINES = 5;
+	private static final String[] EDITS = {"", "x", "\n", ",", "{", "}", "[", "'", "/*", "macro a : b\n"};
+
+	@Test public void equality() throws IOException{
+		for(String name : new String[]{"json1", "listTest", "objTest", "primitiveTest", "collections", "5"})
+			test(TestUtil.expectSourceFrom("equality_tests", name), name);
+	}
+
+	@Test public void errors() throws IOException{
+		for(String name : new String[]{"expectValue1", "invalidStatement", "redundantComma", "unterminated1", "unterminated2", "wtf"})
+			test(TestUtil.expectSourceFrom("error_tests", name), name);
+	}
+
+	@Test public void reuse(){
+		AmongEngine engine = new AmongEngine();
+		CompileResult result = engine.read(Source.of("a{}\nb{}\nc{}\nd{}\ne{}"));
+		CompileResult edited = engine.readIncremental(result, 12, 1, "ee");
+		edited.expectSuccess();
+		assertEquals(engine.read(Source.of("a{}\nb{}\nc{}\nee{}\ne{}")).root().objects(), edited.root().objects());
+		assertSame(result.root().getObject(0), edited.root().getObject(0));
+		assertSame(result.root().getObject(1), edited.root().getObject(1));
+		assertSame(result.root().getObject(4), edited.root().getObject(4));
+	}
+
+	private static void test(Source source, String name){
+		AmongEngine engine = new AmongEngine();
+		CompileResult previous = engine.read(source);
+		int length = source.totalLength();
+		for(int offset : offsets(source)){
+			for(String edit : EDITS){
+				for(int removed = 0; removed<=Math.min(2, length-offset); removed++){
+					if(removed==0&&edit.isEmpty()) continue;
+					String text = source.substring(0, offset)+edit+source.substring(offset+removed, length);
+					String message = name+": replacing "+removed+" at "+offset+" with '"+edit+"'";
+					CompileResult expected = engine.read(Source.of(text));
+					CompileResult result = engine.readIncremental(previous, offset, removed, edit);
+					assertEquals(expected.root().objects(), result.root().objects(), message);
+					assertEquals(reports(expected), reports(result), message);
+					assertEquals(expected.definition().macros(), result.definition().macros(), message);
+					// consecutive edit, skipped if line break normalization changed the length
+					int inserted = edit.codePointCount(0, edit.length());
+					if(result.source().totalLength()!=length-removed+inserted) continue;
+					CompileResult revert = engine.readIncremental(result, offset, inserted, source.substring(offset, offset+removed));
+					assertEquals(previous.root().objects(), revert.root().objects(), message+" (reverted)");
+					assertEquals(reports(previous), reports(revert), message+" (reverted)");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start of the lines, where top level statements are split, and a few random positions in between. Long sources
+	 * are sampled every few lines.
+	 */
+	private static Set<Integer> offsets(Source source){
+		int length = source.totalLength();
+		List<Integer> lineStarts = new ArrayList<>();
+		for(int i = 0; i<length; i++)
+			if(source.codePointAt(i)=='\n') lineStarts.add(i+1);
+		Set<Integer> offsets = new TreeSet<>();
+		offsets.add(0);
+		offsets.add(length);
+		int step = Math.max(1, lineStarts.size()/MAX_LINES);
+		for(int i = 0; i<lineStarts.size(); i += step) offsets.add(lineStarts.get(i));
+		Random random = new Random(length);
+		for(int i = 0; i<3; i++) offsets.add(random.nextInt(length+1));
+		return offsets;
+	}
+
+	private static List<String> reports(CompileResult result){
+		List<String> list = new ArrayList<>();
+		for(Report r : result.reports())
+			list.add(r.type()+" "+r.sourcePosition()+" "+r.message());
+		return list;
+	}
+}
@@ -0,0 +1,75 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Report;
+import ttmp.among.compile.ReportType;
+import ttmp.among.compile.Source;
+import ttmp.among.obj.Among;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonTests{
+	@Test public void sameAsRead(){
+		String json = "{\n  \"name\": \"amogus\",\n  \"sus\": true,\n  \"impostors\": [1, -2.5, 3e10, 0.25E-3, null],\n"+
+				"  \"crew\": [{\"color\": \"red\", \"tasks\": []}, {\"color\": \"cyan\", \"tasks\": [\"wires\", \"fuel\"]}],\n"+
+				"  \"empty\": {},\n  \"escaped\": \"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u0041\\uD83D\\uDE00\",\n  \"\": \"{[,]}: //\"\n}\n"+
+				"[\"second\", false]";
+		AmongEngine engine = new AmongEngine();
+		CompileResult expected = engine.read(Source.of(json));
+		expected.expectSuccess();
+		CompileResult result = engine.readJson(Source.of(json));
+		result.expectSuccess();
+		assertEquals(expected.root().objects(), result.root().objects());
+		assertEquals("a\"b\\c/d\b\f\n\r\tA\uD83D\uDE00",
+				result.root().getObject(0).asObj().getProperty("escaped").asPrimitive().getValue());
+	}
+
+	@Test public void duplicateProperty(){
+		AmongEngine engine = new AmongEngine();
+		CompileResult result = engine.readJson(Source.of("{\"a\": 1, \"a\": 2}"));
+		assertTrue(result.hasError());
+		engine.allowDuplicateObjectProperty = true;
+		result = engine.readJson(Source.of("{\"a\": 1, \"a\": 2}"));
+		result.expectSuccess();
+		assertEquals(ReportType.WARN, result.reports().get(0).type());
+		assertEquals(Among.object().prop("a", 1), result.root().singleObject());
+	}
+
+	@Test public void deepNesting(){
+		int depth = 100000;
+		StringBuilder stb = new StringBuilder();
+		for(int i = 0; i<depth; i++) stb.append(i%2==0 ? "[" : "{\"k\":");
+		stb.append("0");
+		for(int i = depth-1; i>=0; i--) stb.append(i%2==0 ? "]" : "}");
+		CompileResult result = new AmongEngine().readJson(Source.of(stb.toString()));
+		result.expectSuccess();
+		assertEquals(stb.toString().replace("\"k\"", "k"), result.root().singleObject().toString());
+	}
+
+	@Test public void errors(){
+		expectError("{\"a\": 1,}", 8);
+		expectError("[1, 2", 5);
+		expectError("[1 2]", 3);
+		expectError("{\"a\" 1}", 5);
+		expectError("{a: 1}", 1);
+		expectError("\"abc\ndef\"", 0);
+		expectError("\"abc\tdef\"", 4);
+		expectError("[\"a\\tb\", \"\u0001\"]", 10);
+		expectError("[01]", 2);
+		expectError("[1.]", 3);
+		expectError("[-]", 2);
+		expectError("[tru]", 1);
+		expectError("\"\\x\"", 1);
+		expectError("\"\\u12G4\"", 5);
+		expectError("1 2 {}3", 6);
+	}
+
+	private static void expectError(String json, int position){
+		CompileResult result = new AmongEngine().readJson(Source.of(json));
+		assertTrue(result.hasError(), json);
+		Report report = result.reports().get(result.reports().size()-1);
+		assertEquals(position, report.sourcePosition(), () -> json+": "+report.message());
+	}
+}
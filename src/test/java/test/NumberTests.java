@@ -0,0 +1,105 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Source;
+import ttmp.among.obj.Among;
+import ttmp.among.obj.AmongList;
+import ttmp.among.obj.AmongPrimitive;
+import ttmp.among.util.NumberParser;
+
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumberTests{
+	private static final String[] SAMPLES = {
+			"", "+", "-", ".", "0", "-0", "+0", "00012", "1.", ".5", "-.5", "1e", "1e+", "1e5", "1E-5f", "1.5d", "1.5dd",
+			" 1 ", "\t2\n", "1 2", "1_000", "NaN", "-NaN", "+Infinity", "-Infinity", "infinity", "Infinity ", "0x1p3",
+			"-0x1.8P-1f", "0x.p1", "0xp1", "0x1", "0x1.p", "٣", "١٢",
+			"2147483647", "2147483648", "-2147483648", "-2147483649",
+			"9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+			"4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "2.2250738585072011e-308",
+			"1.7976931348623157e308", "1.7976931348623159e308", "1e-400", "1e400", "1e0000000000000000000000001",
+			"123456789012345678901234", "0.000000000000000000000000000001234", "9007199254740993", "1e23",
+			"8.98846567431158e307", "3.4028235e38", "3.4028236e38", "1.4e-45", "7.006492321624085e-46"
+	};
+
+	@Test public void samples(){
+		for(String s : SAMPLES) test(s);
+	}
+
+	@Test public void random(){
+		Random random = new Random(1234);
+		for(int i = 0; i<10000; i++){
+			test(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			test(Float.toString(Float.intBitsToFloat(random.nextInt())));
+			test(Long.toString(random.nextLong()));
+			test(Integer.toString(random.nextInt()));
+
+			StringBuilder stb = new StringBuilder();
+			for(int j = random.nextInt(19); j>=0; j--) stb.append((char)('0'+random.nextInt(10)));
+			if(random.nextBoolean()) stb.insert(random.nextInt(stb.length()+1), '.');
+			stb.append('e').append(random.nextInt(700)-350);
+			test(stb.toString());
+		}
+	}
+
+	@Test public void parsedNumber(){
+		CompileResult result = new AmongEngine().read(Source.of("[ 1.5, -0, 0.0001, 123456789012345678901234.5, 1.5.5, 1e5 ]"));
+		result.expectSuccess();
+		AmongList list = result.root().singleObject().asList();
+		for(Among a : list){
+			String value = a.asPrimitive().getValue();
+			Double expected;
+			try{
+				expected = Double.parseDouble(value);
+			}catch(NumberFormatException ex){
+				expected = null;
+			}
+			OptionalDouble d = a.asPrimitive().tryDoubleValue();
+			assertEquals(expected==null ? OptionalDouble.empty() : OptionalDouble.of(expected), d, value);
+		}
+		AmongPrimitive p = list.get(0).asPrimitive();
+		assertEquals(OptionalDouble.of(1.5), p.tryDoubleValue());
+		p.setValue("sus");
+		assertEquals(OptionalDouble.empty(), p.tryDoubleValue());
+		assertEquals(1, p.getIntValue(1));
+	}
+
+	private static void test(String s){
+		Double d;
+		try{
+			d = Double.parseDouble(s);
+		}catch(NumberFormatException ex){
+			d = null;
+		}
+		OptionalDouble d2 = NumberParser.parseDouble(s);
+		if(d==null) assertFalse(d2.isPresent(), s);
+		else{
+			assertTrue(d2.isPresent(), s);
+			assertEquals(Double.doubleToRawLongBits(d), Double.doubleToRawLongBits(d2.getAsDouble()), s);
+			assertEquals(Float.floatToRawIntBits(Float.parseFloat(s)), Float.floatToRawIntBits(NumberParser.parseFloat(s, 0)), s);
+		}
+
+		Long l;
+		try{
+			l = Long.parseLong(s);
+		}catch(NumberFormatException ex){
+			l = null;
+		}
+		assertEquals(l==null ? OptionalLong.empty() : OptionalLong.of(l), NumberParser.parseLong(s), s);
+
+		Integer i;
+		try{
+			i = Integer.parseInt(s);
+		}catch(NumberFormatException ex){
+			i = null;
+		}
+		assertEquals(i==null ? OptionalInt.empty() : OptionalInt.of(i), NumberParser.parseInt(s), s);
+	}
+}
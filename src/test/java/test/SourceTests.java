@@ -0,0 +1,200 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import ttmp.among.AmongEngine;
+import ttmp.among.compile.CompileResult;
+import ttmp.among.compile.Source;
+import ttmp.among.util.ColumnUnit;
+import ttmp.among.util.LnCol;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceTests{
+	private static final String[] SAMPLES = {
+			"",
+			"\n",
+			"\r\n\r\n",
+			"Hello, World!",
+			"a\nb\r\nc\rd\n",
+			"a\n\n\nb",
+			"macro amogus : 'sus' \\\n  sus",
+			"😳 when the imposter is sus 😳\r\n🥺",
+			"ascii prefix, then: ⣿⣿⣿\n"+repeat("long line ", 40)+"⠛⠛⢻⡏\r\n"+repeat("tail", 50),
+			repeat("😳 sus\r\n", 3000)
+	};
+
+	@Test public void compact(){
+		for(String s : SAMPLES){
+			Source src = Source.of(s);
+			String normalized = s.replace("\r\n", "\n").replace('\r', '\n');
+			if(normalized.endsWith("\n")) normalized = normalized.substring(0, normalized.length()-1);
+			int[] expected = normalized.codePoints().toArray();
+			assertEquals(expected.length, src.totalLength(), "totalLength");
+			for(int i = 0; i<expected.length; i++)
+				assertEquals(expected[i], src.codePointAt(i), "codePointAt("+i+")");
+			for(int i = expected.length-1; i>=0; i--)
+				assertEquals(expected[i], src.codePointAt(i), "codePointAt("+i+")");
+			assertEquals(Source.EOF, src.codePointAt(expected.length));
+			assertEquals(Arrays.asList(normalized.split("\n", -1)), src.getRawSource());
+		}
+	}
+
+	@Test public void factories() throws IOException{
+		for(String s : SAMPLES){
+			Source expected = Source.of(s);
+			assertSourceEquals(expected, Source.of(new StringBuilder(s)));
+			assertSourceEquals(expected, Source.of(s.toCharArray()));
+			assertSourceEquals(expected, Source.of(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+			assertSourceEquals(expected, Source.of(s.getBytes(StandardCharsets.UTF_16LE), StandardCharsets.UTF_16LE));
+			assertSourceEquals(expected, Source.read(new StringReader(s)));
+			assertSourceEquals(expected, Source.stream(Channels.newChannel(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)))));
+			assertSourceEquals(expected, Source.stream(Channels.newChannel(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_16LE))), StandardCharsets.UTF_16LE));
+		}
+	}
+
+	@Test public void trimmed() throws IOException{
+		for(String s : SAMPLES){
+			String normalized = s.replace("\r\n", "\n").replace('\r', '\n');
+			if(normalized.endsWith("\n")) normalized = normalized.substring(0, normalized.length()-1);
+			int length = normalized.length();
+			assertEquals(length, storeLength(Source.of(s)), "of(String)");
+			assertEquals(length, storeLength(Source.of(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)), "of(byte[])");
+			assertEquals(length, storeLength(Source.read(new StringReader(s))), "read(Reader)");
+		}
+	}
+
+	/**
+	 * @return Length of the array backing the source
+	 */
+	private static int storeLength(Source source){
+		return Array.getLength(field(source, "chars"));
+	}
+
+	private static Object field(Source source, String name){
+		try{
+			Field field = source.getClass().getDeclaredField(name);
+			field.setAccessible(true);
+			return field.get(source);
+		}catch(ReflectiveOperationException ex){
+			throw new RuntimeException(ex);
+		}
+	}
+
+	@Test public void lineColumn(){
+		for(String s : SAMPLES){
+			Source src = Source.of(s);
+			int[] positions = new int[src.totalLength()+1];
+			for(int i = 0; i<positions.length; i++) positions[i] = i;
+			for(ColumnUnit unit : ColumnUnit.values()){
+				LnCol[] lineColumns = src.getLnCol(positions, unit);
+				for(int i = 0; i<positions.length; i++)
+					assertEquals(src.getLnCol(i, unit), lineColumns[i]);
+			}
+			for(int i = 0; i<positions.length; i++)
+				assertEquals(src.getLnCol(i), src.getLnCol(i, ColumnUnit.CODEPOINT));
+		}
+		Source src = Source.of("a\n😳é😳x");
+		assertEquals(new LnCol(2, 4), src.getLnCol(5, ColumnUnit.CODEPOINT));
+		assertEquals(new LnCol(2, 6), src.getLnCol(5, ColumnUnit.UTF16));
+		assertEquals(new LnCol(2, 11), src.getLnCol(5, ColumnUnit.UTF8));
+	}
+
+	@Test public void mapped() throws IOException{
+		for(String s : SAMPLES){
+			Path file = Files.createTempFile("among", ".among");
+			try{
+				Files.write(file, s.getBytes(StandardCharsets.UTF_8));
+				assertSourceEquals(Source.of(s), Source.map(file));
+			}finally{
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test public void mappedParse() throws IOException{
+		Path file = Files.createTempFile("among", ".among");
+		try{
+			Files.write(file, TestUtil.expectSourceFrom("equality_tests", "unicodeTest").getRawSource(), StandardCharsets.UTF_8);
+			assertEquals(TestUtil.make(TestUtil.expectSourceFrom("equality_tests", "unicodeTest")).root().objects(),
+					TestUtil.make(Source.map(file)).root().objects());
+		}finally{
+			Files.delete(file);
+		}
+	}
+
+	@Test public void stream(){
+		int objects = 200000;
+		ReadableByteChannel channel = new ReadableByteChannel(){
+			private final byte[] line = "{a: 1, b: 'sus'}\r\n".getBytes(StandardCharsets.UTF_8);
+			private final byte[] error = "{a: 1,, b: 2}\n".getBytes(StandardCharsets.UTF_8);
+			private int lines;
+			private int index;
+
+			@Override public int read(ByteBuffer dst){
+				if(lines>=objects) return -1;
+				int read = 0;
+				while(dst.hasRemaining()&&lines<objects){
+					byte[] bytes = lines==0 ? error : line;
+					dst.put(bytes[index++]);
+					read++;
+					if(index==bytes.length){
+						index = 0;
+						lines++;
+					}
+				}
+				return read;
+			}
+			@Override public boolean isOpen(){
+				return true;
+			}
+			@Override public void close(){}
+		};
+		int[] count = {0};
+		CompileResult result = new AmongEngine().readStreaming(Source.stream(channel), o -> count[0]++);
+		assertEquals(objects, count[0]);
+		assertEquals(objects, result.source().totalLines());
+		// only line starts of the window are retained
+		assertTrue(Array.getLength(field(result.source(), "lineStarts"))<=1024);
+		assertEquals(1, result.reports().size());
+		assertEquals(new LnCol(1, 7), result.reports().get(0).getLineColumn(result.source()));
+		List<String> log = new ArrayList<>();
+		result.printReports(null, log::add);
+		assertEquals(2, log.size()); // no snippet for released portion
+		assertTrue(log.get(1).startsWith("[1:7]"), log.get(1));
+	}
+
+	private static String repeat(String s, int times){
+		StringBuilder stb = new StringBuilder();
+		for(int i = 0; i<times; i++) stb.append(s);
+		return stb.toString();
+	}
+
+	static void assertSourceEquals(Source expected, Source actual){
+		assertEquals(expected.totalLength(), actual.totalLength(), "totalLength");
+		assertEquals(expected.totalLines(), actual.totalLines(), "totalLines");
+		for(int i = 0; i<expected.totalLines(); i++)
+			assertEquals(expected.lineStart(i), actual.lineStart(i), "lineStart");
+		for(int i = 0; i<=expected.totalLength(); i++)
+			assertEquals(expected.codePointAt(i), actual.codePointAt(i), "codePointAt("+i+")");
+		// backwards, to exercise random access
+		for(int i = expected.totalLength()-1; i>=0; i--)
+			assertEquals(expected.codePointAt(i), actual.codePointAt(i), "codePointAt("+i+")");
+		assertEquals(expected.getRawSource(), actual.getRawSource());
+	}
+}